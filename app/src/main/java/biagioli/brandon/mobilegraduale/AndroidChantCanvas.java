@@ -0,0 +1,122 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// A ChantCanvas that draws onto an android.graphics.Canvas. One of these is kept by each
+// GregorianChantView and pointed at whichever Canvas is being drawn (see setCanvas), so that
+// drawing a frame doesn't create any objects.
+//
+// Unlike ChantRenderer, this does keep state (the Canvas, and the glyphs' bitmaps), so it is only
+// used by one thread at a time; drawing a chant on another thread means making another one.
+public class AndroidChantCanvas implements ChantCanvas {
+    protected final Paint[] paints;
+    protected Canvas canvas;
+    protected float scale = 1; //the scale that the chant is drawn at (see GregorianChantView)
+    protected GlyphBitmaps glyphBitmaps; //the glyphs, for drawing without hardware acceleration
+
+    // Makes a canvas with the paints that chants are usually drawn with (see newPaints).
+    public AndroidChantCanvas() {
+        this(newPaints());
+    }
+
+    // paints holds a Paint for each of the paints in ChantCanvas (TEXT_PAINT and so on)
+    public AndroidChantCanvas(Paint[] paints) {
+        this.paints = paints;
+    }
+
+    // Returns the paints that chants are drawn with, in black on the usual sizes of ChantGeometry.
+    public static Paint[] newPaints() {
+        Paint[] paints = new Paint[PAINT_COUNT];
+        paints[TEXT_PAINT] = GregorianChantView.newTextPaint();
+        paints[STAFF_PAINT] = new Paint();
+        paints[STAFF_PAINT].setStrokeWidth(2);
+        paints[EPISEMA_PAINT] = new Paint();
+        paints[EPISEMA_PAINT].setStrokeWidth(4);
+        paints[NOTE_PAINT] = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paints[NOTE_PAINT].setStyle(Paint.Style.FILL);
+        paints[ERROR_PAINT] = new Paint();
+        paints[ERROR_PAINT].setColor(Color.RED);
+        paints[ERROR_PAINT].setTextSize(40);
+        return paints;
+    }
+
+    // Points this at the Canvas to draw onto.
+    public void setCanvas(Canvas canvas) {
+        this.canvas = canvas;
+    }
+
+    // Sets the scale that the chant will be drawn at, so that the glyphs' bitmaps can be drawn to match.
+    public void setScale(float scale) {
+        if (this.scale != scale) {
+            this.scale = scale;
+            if (glyphBitmaps != null) {
+                glyphBitmaps.recycle();
+                glyphBitmaps = null;
+            }
+        }
+    }
+
+    @Override
+    public void save() {
+        canvas.save();
+    }
+
+    @Override
+    public void restore() {
+        canvas.restore();
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        canvas.translate(dx, dy);
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+        canvas.scale(sx, sy);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        canvas.drawLine(startX, startY, stopX, stopY, paints[paint]);
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, int paint) {
+        canvas.drawCircle(cx, cy, radius, paints[paint]);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, int paint) {
+        canvas.drawRect(left, top, right, bottom, paints[paint]);
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, int paint) {
+        canvas.drawText(text, x, y, paints[paint]);
+    }
+
+    // A hardware-accelerated canvas caches the glyphs' Paths itself; otherwise the glyphs are
+    // stamped from bitmaps drawn ahead of time.
+    @Override
+    public void drawGlyph(int glyph) {
+        if (canvas.isHardwareAccelerated()) {
+            NeumeGlyphs.draw(canvas, glyph, paints[NOTE_PAINT]);
+        } else {
+            if (glyphBitmaps == null) {
+                glyphBitmaps = new GlyphBitmaps(scale);
+            }
+            glyphBitmaps.draw(canvas, glyph, paints[NOTE_PAINT]);
+        }
+    }
+
+    @Override
+    public void drawPorrectus(float drop) {
+        NeumeGlyphs.drawPorrectus(canvas, drop, paints[NOTE_PAINT]);
+    }
+}
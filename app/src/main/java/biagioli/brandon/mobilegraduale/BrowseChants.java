@@ -0,0 +1,177 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Lists every chant in the app by its incipit, and searches them as the user types: the search box
+// takes the start of a chant, or any phrase from it, with or without accents (see ChantIndex).
+//
+// The index is read from the assets on a background thread the first time this opens (just once,
+// even if the screen is rotated while it's being read), and kept for as long as the app is
+// running; it's small, even for a whole Graduale.
+//
+// Each chant in the list has a picture of its start under its name (see IncipitThumbnails), which is
+// drawn in the background when its row first comes on the screen.
+public class BrowseChants extends AppCompatActivity implements TextWatcher, AdapterView.OnItemClickListener {
+    protected static volatile ChantIndex index; //null until it has been read
+    //reads the index; a single thread, so that it's only read once however many BrowseChants ask
+    private static final ExecutorService indexLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ChantIndex");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    protected EditText queryText;
+    protected ResultAdapter resultAdapter;
+    protected int[] results = new int[0]; //the chants listed, by their number in the index
+    protected ChantFile chants; //the chants themselves, which have the same numbers as in the index
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_browse_chants);
+        chants = ChantLoader.chants(this);
+        queryText = (EditText) findViewById(R.id.browse_query);
+        queryText.addTextChangedListener(this);
+        resultAdapter = new ResultAdapter();
+        ListView resultList = (ListView) findViewById(R.id.browse_results);
+        resultList.setAdapter(resultAdapter);
+        resultList.setOnItemClickListener(this);
+
+        if (index != null) {
+            search();
+        } else {
+            //if an earlier BrowseChants (before the screen rotated, say) is already reading the
+            //index, this waits behind it, and finds the index read
+            final Context appContext = getApplicationContext();
+            indexLoader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (index == null) {
+                        index = ChantLoader.loadIndex(appContext);
+                    }
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            search();
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    // lists the chants found by what is in the search box
+    protected void search() {
+        if (index == null || isFinishing()) {
+            return;
+        }
+        results = index.search(queryText.getText().toString());
+        resultAdapter.notifyDataSetChanged();
+    }
+
+    // Returns the ID of a chant in the index, or -1 if it isn't in the app. The index and chants.bin
+    // are made together (see ChantCompiler), so a chant's number in one is its ID in the other.
+    protected int chantID(int chant) {
+        return (chants.contains(chant) && chants.name(chant).equals(index.name(chant))) ? chant : -1;
+    }
+
+    @Override
+    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        int chantID = chantID(results[position]);
+        if (chantID < 0) {
+            return; //the index is out of date; this chant isn't in the app any more
+        }
+        Intent intent = new Intent(this, DisplayChant.class);
+        intent.putExtra("MOBILEGRADUALE_CHANT", chantID);
+        startActivity(intent);
+    }
+
+    // The part of a chant as it's shown: "Introit" for a chant that chants.bin says is an introit.
+    // A chant that isn't in the app any more (chantID is -1) only has its name, such as
+    // Introit_Ad_te_levavi, which starts with its part.
+    protected String partOf(int chant, int chantID) {
+        if (chantID >= 0) {
+            String part = chants.part(chantID);
+            return part.isEmpty() ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1);
+        }
+        String name = index.name(chant);
+        int underscore = name.indexOf('_');
+        return (underscore > 0) ? name.substring(0, underscore) : name;
+    }
+
+    // Shows each chant found as its part and incipit, with a picture of its start.
+    protected class ResultAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return results.length;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return results[position];
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return results[position];
+        }
+
+        @Override
+        public View getView(int position, View row, ViewGroup parent) {
+            if (row == null) {
+                row = LayoutInflater.from(BrowseChants.this).inflate(R.layout.item_browse_chant, parent, false);
+            }
+            int chant = results[position];
+            int chantID = chantID(chant);
+            ((TextView) row.findViewById(R.id.browse_item_title)).setText(partOf(chant, chantID) + ": "
+                    + index.incipit(chant));
+
+            ImageView incipit = (ImageView) row.findViewById(R.id.browse_item_incipit);
+            if (chantID >= 0) {
+                incipit.setVisibility(View.VISIBLE);
+                IncipitThumbnails.load(incipit, chantID);
+            } else {
+                IncipitThumbnails.cancel(incipit);
+                incipit.setVisibility(View.GONE);
+            }
+            return row;
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        search();
+    }
+}
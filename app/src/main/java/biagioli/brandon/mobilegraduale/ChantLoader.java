@@ -0,0 +1,133 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+import android.graphics.Paint;
+
+import android.content.res.AssetFileDescriptor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Loads chants by their ID, which is their place in chants.bin (see ChantFile). Nothing in here
+// touches a View, so chants can be loaded on any thread (see ChantPreloader).
+//
+// chants.bin is mapped into memory the first time a chant is asked for, rather than read, so
+// opening it takes the same time however many chants the app has, and each chant is only read
+// from the file when it is loaded.
+public final class ChantLoader {
+    private static volatile ChantFile chantFile; //null until it has been opened
+
+    private ChantLoader() {
+    }
+
+    // Returns the chants in the app, opening chants.bin if it hasn't been opened yet. If it can't
+    // be opened (because the app was built without it), there are no chants.
+    public static ChantFile chants(Context context) {
+        ChantFile chants = chantFile;
+        if (chants == null) {
+            synchronized (ChantLoader.class) {
+                chants = chantFile;
+                if (chants == null) {
+                    chants = open(context);
+                    chantFile = chants;
+                }
+            }
+        }
+        return chants;
+    }
+
+    // Returns the chant with the given ID. An ID that isn't in chants.bin gets a chant that just
+    // says so, in its error messages.
+    public static Chant load(Context context, int chantID) {
+        ChantFile chants = chants(context);
+        if (chants.contains(chantID)) {
+            try {
+                return chants.read(chantID);
+            } catch (IOException e) {
+                //fall through to the error chant; the file is broken
+            }
+        }
+        return new ChantParser().parse(context.getString(R.string.Error_Message_Chant));
+    }
+
+    private static ChantFile open(Context context) {
+        try {
+            return ChantFile.open(map(context));
+        } catch (IOException e) {
+            return ChantFile.empty();
+        }
+    }
+
+    // Maps chants.bin, which the build leaves uncompressed in the APK (see app/build.gradle). If it
+    // was compressed after all, it can't be mapped, and is read into memory instead.
+    private static ByteBuffer map(Context context) throws IOException {
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = context.getAssets().openFd(ChantFile.ASSET_NAME);
+        } catch (IOException e) {
+            return read(context);
+        }
+        FileInputStream in = descriptor.createInputStream();
+        try {
+            //the mapping stays valid after the file is closed
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(),
+                    descriptor.getLength());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static ByteBuffer read(Context context) throws IOException {
+        InputStream in = context.getAssets().open(ChantFile.ASSET_NAME);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    // Returns the index of every chant's words, for searching (see ChantIndex), which is made when
+    // the app is built. If it wasn't, the index is empty.
+    public static ChantIndex loadIndex(Context context) {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(context.getAssets().open(ChantIndex.ASSET_NAME));
+            return ChantIndex.read(in);
+        } catch (IOException e) {
+            return ChantIndex.build(new ArrayList<String>(), new ArrayList<Chant>());
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //nothing to do; the index has already been read (or not)
+                }
+            }
+        }
+    }
+
+    // Measures the text of each syllable of the chant with textPaint, for ChantLayout. Syllables
+    // that have been measured before, in this chant or another, aren't measured again (see
+    // TextWidthCache).
+    public static int[] measureText(Chant chant, Paint textPaint) {
+        int[] textWidths = new int[chant.syllableCount];
+        for (int i = 0; i < chant.syllableCount; i++) {
+            textWidths[i] = TextWidthCache.measure(chant.syllableText[i], textPaint);
+        }
+        return textWidths;
+    }
+}
@@ -0,0 +1,99 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Gets chants ready before they are asked for: a menu calls preload() with the chants it lists, and
+// each one is loaded, measured and laid out on a background thread, and put in the ChantRepository.
+// When one of them is then shown, GregorianChantView finds it there, and so has nothing to do but
+// draw it. If it isn't ready yet, ChantRepository.get() waits for it (see await), rather than
+// loading it a second time.
+//
+// preload() is only called from the main thread; await() is called from any thread.
+public final class ChantPreloader {
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //stay out of the way of the main thread
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ChantPreloader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    //chants being preloaded; locked, since await() reads it from other threads
+    private static final SparseArray<FutureTask<?>> loading = new SparseArray<>();
+
+    private ChantPreloader() {
+    }
+
+    // Starts getting the given chants ready, in order, for a View as wide as the screen at the default
+    // zoom. Chants that are already in the ChantRepository, or already being preloaded, aren't loaded
+    // again.
+    public static void preload(Context context, int[] chantIDs) {
+        final Context appContext = context.getApplicationContext(); //don't hold on to an Activity
+        final int width = GregorianChantView.layoutWidth(appContext,
+                appContext.getResources().getDisplayMetrics().widthPixels, GregorianChantView.DEFAULT_ZOOM);
+        for (final int chantID : chantIDs) {
+            synchronized (loading) {
+                FutureTask<?> task = loading.get(chantID);
+                if (task != null && !task.isDone()) {
+                    continue;
+                }
+                loading.remove(chantID);
+            }
+            if (ChantRepository.getIfCached(chantID) != null) {
+                continue;
+            }
+            FutureTask<?> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    Chant chant = ChantLoader.load(appContext, chantID);
+                    int[] textWidths = ChantLoader.measureText(chant, GregorianChantView.newTextPaint());
+                    ChantRepository.put(appContext, chantID,
+                            new PreparedChant(chant, textWidths, new ChantLayout(chant, textWidths, width)));
+                }
+            }, null);
+            synchronized (loading) {
+                loading.put(chantID, task);
+            }
+            executor.execute(task);
+        }
+    }
+
+    // Waits until a chant being preloaded is in the ChantRepository, if it is being preloaded. A
+    // chant whose turn hasn't come yet is loaded on this thread, instead of waiting for the chants
+    // before it.
+    static void await(int chantID) {
+        FutureTask<?> task;
+        synchronized (loading) {
+            task = loading.get(chantID);
+        }
+        if (task == null) {
+            return;
+        }
+        task.run(); //does nothing if the preloader has already started (or finished) it
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //the chant isn't in the ChantRepository, so the caller loads it
+        }
+    }
+}
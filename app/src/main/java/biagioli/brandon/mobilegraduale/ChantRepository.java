@@ -0,0 +1,101 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.v4.util.LruCache;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Every chant that has been loaded recently, by its ID (see ChantFile), so that opening a chant
+// again (going back and forth between propers, or rotating the screen) doesn't load it again.
+//
+// The chants are kept in an LruCache that holds a small fraction of the app's memory, and the
+// least recently used chants are dropped when it's full. When the system asks the app to use less
+// memory (onTrimMemory and onLowMemory), some or all of the chants are dropped as well; they are
+// just loaded again the next time they are needed. The same goes for the measured text widths
+// (see TextWidthCache) and the menus' pictures of the chants (see IncipitThumbnails).
+//
+// The cache is safe to use from any thread (ChantPreloader adds chants from its background thread).
+public final class ChantRepository {
+    private static final int MAX_SIZE = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+
+    private static final LruCache<Integer, PreparedChant> cache = new LruCache<Integer, PreparedChant>(MAX_SIZE) {
+        @Override
+        protected int sizeOf(Integer chantID, PreparedChant prepared) {
+            return prepared.size;
+        }
+    };
+    private static boolean registered; //whether trimMemory has been registered for the memory callbacks
+
+    private ChantRepository() {
+    }
+
+    // Returns the chant with the given ID, loading it (on this thread) if it isn't in the cache. A
+    // chant that the ChantPreloader is getting ready is waited for instead of loaded again.
+    public static PreparedChant get(Context context, int chantID) {
+        PreparedChant prepared = getIfCached(chantID);
+        if (prepared == null) {
+            ChantPreloader.await(chantID);
+            prepared = getIfCached(chantID);
+        }
+        if (prepared == null) {
+            Chant chant = ChantLoader.load(context, chantID);
+            prepared = new PreparedChant(chant, ChantLoader.measureText(chant, GregorianChantView.newTextPaint()), null);
+            put(context, chantID, prepared);
+        }
+        return prepared;
+    }
+
+    // Returns the chant with the given ID if it is in the cache, and null otherwise.
+    public static PreparedChant getIfCached(int chantID) {
+        return cache.get(chantID);
+    }
+
+    // Adds a chant to the cache, or replaces it (with a new layout, for instance).
+    public static void put(Context context, int chantID, PreparedChant prepared) {
+        register(context);
+        cache.put(chantID, prepared);
+    }
+
+    // Drops chants from the cache, depending on how badly the system needs memory (level is one of
+    // ComponentCallbacks2's TRIM_MEMORY_ constants).
+    public static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            cache.evictAll(); //the app is likely to be killed soon anyway
+            TextWidthCache.clear();
+            IncipitThumbnails.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.size() / 2);
+            IncipitThumbnails.trim();
+        }
+    }
+
+    // Starts listening for the system's requests to use less memory, if this hasn't already.
+    static synchronized void register(Context context) {
+        if (registered) {
+            return;
+        }
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                cache.evictAll();
+                TextWidthCache.clear();
+                IncipitThumbnails.clear();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+        registered = true;
+    }
+}
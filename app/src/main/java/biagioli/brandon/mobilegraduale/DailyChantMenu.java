@@ -4,45 +4,79 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import biagioli.brandon.mobilegraduale.LiturgicalCalendar.Celebration;
 
 /**
  * Created by Brandon on 3/16/2017.
  */
+// Lists the propers of today's celebration (see LiturgicalCalendar and Propers). A part of the
+// propers that isn't in the app yet has its button disabled. Under each button is a picture of the
+// start of the chant (see IncipitThumbnails), which opens it too.
 public class DailyChantMenu extends AppCompatActivity {
+    //the buttons for each part of the propers, in the order of Propers.INTROIT and so on
+    protected static final int[] PART_BUTTONS = { R.id.daily_introit_button, R.id.daily_gradual_button,
+            R.id.daily_alleluia_button, R.id.daily_offertory_button, R.id.daily_communion_button };
+    //the pictures of the start of each part's chant, in the same order
+    protected static final int[] PART_INCIPITS = { R.id.daily_introit_incipit, R.id.daily_gradual_incipit,
+            R.id.daily_alleluia_incipit, R.id.daily_offertory_incipit, R.id.daily_communion_incipit };
+
+    protected int[] propers; //the chants on this menu, which are loaded in the background as soon as it opens
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_daily_propers_menu);
+
+        Celebration today = Propers.today();
+        propers = Propers.of(this, today);
+        ((TextView) findViewById(R.id.daily_celebration)).setText(today.title);
+        int available = 0;
+        for (int part = 0; part < Propers.PART_COUNT; part++) {
+            findViewById(PART_BUTTONS[part]).setEnabled(propers[part] >= 0);
+            ImageView incipit = (ImageView) findViewById(PART_INCIPITS[part]);
+            if (propers[part] >= 0) {
+                IncipitThumbnails.load(incipit, propers[part]);
+            } else {
+                incipit.setVisibility(View.GONE);
+            }
+            available += (propers[part] >= 0) ? 1 : 0;
+        }
+
+        int[] chantIDs = new int[available];
+        for (int part = 0, i = 0; part < Propers.PART_COUNT; part++) {
+            if (propers[part] >= 0) {
+                chantIDs[i++] = propers[part];
+            }
+        }
+        ChantPreloader.preload(this, chantIDs);
     }
 
-    public void displayDailyIntroit(View view) {
+    protected void displayPart(int part) {
         Intent intent = new Intent(this, DisplayChant.class);
-        intent.putExtra("MOBILEGRADUALE_CHANT",R.string.Introit_Ad_te_levavi);
+        intent.putExtra("MOBILEGRADUALE_CHANT",propers[part]);
         startActivity(intent);
     }
 
+    public void displayDailyIntroit(View view) {
+        displayPart(Propers.INTROIT);
+    }
+
     public void displayDailyGradual(View view) {
-        Intent intent = new Intent(this, DisplayChant.class);
-        intent.putExtra("MOBILEGRADUALE_CHANT",R.string.Gradual_Universi_qui_te_exspectant);
-        startActivity(intent);
+        displayPart(Propers.GRADUAL);
     }
 
     public void displayDailyAlleluia(View view) {
-        Intent intent = new Intent(this, DisplayChant.class);
-        intent.putExtra("MOBILEGRADUALE_CHANT",R.string.Alleluia_Ostende_nobis);
-        startActivity(intent);
+        displayPart(Propers.ALLELUIA);
     }
 
     public void displayDailyOffertory(View view) {
-        Intent intent = new Intent(this, DisplayChant.class);
-        intent.putExtra("MOBILEGRADUALE_CHANT",R.string.Offertory_Ad_te_Domine_levavi);
-        startActivity(intent);
+        displayPart(Propers.OFFERTORY);
     }
 
     public void displayDailyCommunion(View view) {
-        Intent intent = new Intent(this, DisplayChant.class);
-        intent.putExtra("MOBILEGRADUALE_CHANT",R.string.Communion_Dominus_dabit_benignitatem);
-        startActivity(intent);
+        displayPart(Propers.COMMUNION);
     }
 }
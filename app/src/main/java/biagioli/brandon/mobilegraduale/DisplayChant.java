@@ -5,12 +5,30 @@ import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 
 public class DisplayChant extends AppCompatActivity {
+    protected GregorianChantView chantView;
 
+    // When the screen rotates, this Activity is made again. The chant itself comes back from the
+    // ChantRepository, so only its layout is redone for the new width; and the same part of the
+    // chant is scrolled to (see GregorianChantView.setPosition), at the same zoom.
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         Intent intent = getIntent();
-        int chantID = intent.getIntExtra("MOBILEGRADUALE_CHANT",R.string.Error_Message_Chant);
-        setContentView(new ChantScrollView(this, chantID));
+        int chantID = intent.getIntExtra("MOBILEGRADUALE_CHANT", -1); //-1 shows the error chant
+        chantView = new GregorianChantView(this, chantID);
+        if (savedInstanceState != null) {
+            chantView.setZoom(savedInstanceState.getFloat("MOBILEGRADUALE_ZOOM", GregorianChantView.DEFAULT_ZOOM));
+            chantView.setPosition(savedInstanceState.getInt("MOBILEGRADUALE_TOP_SYLLABLE", -1),
+                    savedInstanceState.getInt("MOBILEGRADUALE_TOP_OFFSET", 0));
+        }
+        setContentView(chantView);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt("MOBILEGRADUALE_TOP_SYLLABLE", chantView.getTopSyllable());
+        outState.putInt("MOBILEGRADUALE_TOP_OFFSET", chantView.getTopOffset());
+        outState.putFloat("MOBILEGRADUALE_ZOOM", chantView.getZoom());
     }
 }
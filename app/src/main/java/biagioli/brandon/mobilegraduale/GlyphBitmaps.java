@@ -0,0 +1,61 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// The glyphs of NeumeGlyphs, drawn ahead of time into bitmaps at a particular scale. Filling a Path
+// in software means working out its edges every time, so when a chant is drawn without hardware
+// acceleration, stamping these bitmaps is much cheaper. (With hardware acceleration, the renderer
+// already caches each Path, so the Paths are drawn directly.)
+public class GlyphBitmaps {
+    protected final float scale;
+    protected final Bitmap[] bitmaps = new Bitmap[NeumeGlyphs.GLYPH_COUNT];
+    protected final float[] left = new float[NeumeGlyphs.GLYPH_COUNT]; //where each bitmap goes,
+    protected final float[] top = new float[NeumeGlyphs.GLYPH_COUNT];  //relative to the glyph's origin
+
+    // scale is the scale that the glyphs will be drawn at, so they can be drawn crisply.
+    public GlyphBitmaps(float scale) {
+        this.scale = scale;
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.FILL);
+        RectF bounds = new RectF();
+        for (int glyph = 0; glyph < NeumeGlyphs.GLYPH_COUNT; glyph++) {
+            NeumeGlyphs.getPath(glyph).computeBounds(bounds, true);
+            //leave a pixel around the edges for the anti-aliasing
+            left[glyph] = (float) Math.floor(bounds.left * scale) - 1;
+            top[glyph] = (float) Math.floor(bounds.top * scale) - 1;
+            int width = (int) Math.ceil(bounds.right * scale) + 1 - (int) left[glyph];
+            int height = (int) Math.ceil(bounds.bottom * scale) + 1 - (int) top[glyph];
+
+            //an ALPHA_8 bitmap is drawn in the color of whatever Paint it is drawn with
+            bitmaps[glyph] = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            Canvas canvas = new Canvas(bitmaps[glyph]);
+            canvas.translate(-left[glyph], -top[glyph]);
+            canvas.scale(scale, scale);
+            NeumeGlyphs.draw(canvas, glyph, paint);
+        }
+    }
+
+    // Draws one of the glyphs with its origin at the canvas's origin, like NeumeGlyphs.draw().
+    public void draw(Canvas canvas, int glyph, Paint paint) {
+        if (scale == 1) {
+            canvas.drawBitmap(bitmaps[glyph], left[glyph], top[glyph], paint);
+        } else {
+            canvas.save();
+            canvas.scale(1 / scale, 1 / scale);
+            canvas.drawBitmap(bitmaps[glyph], left[glyph], top[glyph], paint);
+            canvas.restore();
+        }
+    }
+
+    public void recycle() {
+        for (Bitmap bitmap : bitmaps) {
+            bitmap.recycle();
+        }
+    }
+}
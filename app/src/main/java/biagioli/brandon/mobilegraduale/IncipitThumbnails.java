@@ -0,0 +1,233 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Small pictures of the start of each chant (its clef and first few neumes), for the menus that
+// list chants. A menu calls load() with an ImageView and a chant; the ImageView shows a placeholder
+// until the picture has been drawn on one of a few background threads, and then shows the picture.
+//
+// The pictures are kept in an LruCache of bitmaps that holds a small fraction of the app's memory,
+// so scrolling back through a list shows them straight away; the ChantRepository drops them along
+// with the chants when the system needs memory. They are alpha-only bitmaps, a quarter the size of
+// colour ones: ImageView draws them in black, like the rest of the chant.
+//
+// The most recently asked for pictures are drawn first, and a picture that no ImageView is waiting
+// for any more (its row scrolled off the screen, and was reused for another chant) isn't drawn at
+// all, so flinging through a long list only draws the rows that it stops on.
+//
+// load() is only called from the main thread. An ImageView's tag is used to remember which picture
+// it is waiting for.
+public final class IncipitThumbnails {
+    private static final int INCIPIT_WIDTH = 1200; //how much of the first line is drawn, in units
+    private static final int INCIPIT_HEIGHT = 340; //the staff and the text under it, without the space below
+    private static final int PLACEHOLDER_COLOR = 0x10000000;
+    private static final int MAX_SIZE = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, Integer.MAX_VALUE);
+    private static final int THREAD_COUNT = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final LruCache<Long, Bitmap> cache = new LruCache<Long, Bitmap>(MAX_SIZE) {
+        @Override
+        protected int sizeOf(Long key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+    //the newest requests go to the front of the queue, so the rows on the screen are drawn first
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable runnable) {
+                    return offerFirst(runnable);
+                }
+            }, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            //stay out of the way of the main thread
+                            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "IncipitThumbnails-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    //each drawing thread has its own canvas, since an AndroidChantCanvas keeps state
+    private static final ThreadLocal<AndroidChantCanvas> canvases = new ThreadLocal<AndroidChantCanvas>() {
+        @Override
+        protected AndroidChantCanvas initialValue() {
+            return new AndroidChantCanvas();
+        }
+    };
+    private static final Handler mainThread = new Handler(Looper.getMainLooper());
+    //the ImageViews waiting for each picture being drawn; only used on the main thread
+    private static final HashMap<Long, ArrayList<ImageView>> waiting = new HashMap<>();
+    //the pictures in waiting, for the drawing threads to check before they start on one
+    private static final Set<Long> wanted = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    private IncipitThumbnails() {
+    }
+
+    // Shows the start of the given chant in view, which should be R.dimen.incipit_height tall. If
+    // view was waiting for another chant, it stops waiting for it.
+    public static void load(ImageView view, int chantID) {
+        Context appContext = view.getContext().getApplicationContext(); //don't hold on to an Activity
+        ChantRepository.register(appContext);
+        int height = view.getResources().getDimensionPixelSize(R.dimen.incipit_height);
+        Long key = ((long) chantID << 32) | height;
+        Long previous = (Long) view.getTag();
+        if (key.equals(previous)) {
+            return; //still on its way
+        }
+        if (previous != null) {
+            stopWaiting(view, previous);
+        }
+
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            view.setTag(null);
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setTag(key);
+        view.setImageDrawable(new ColorDrawable(PLACEHOLDER_COLOR));
+        ArrayList<ImageView> views = waiting.get(key);
+        if (views == null) {
+            views = new ArrayList<>(2);
+            waiting.put(key, views);
+            wanted.add(key);
+            executor.submit(new Render(appContext, chantID, height, key));
+        }
+        views.add(view);
+    }
+
+    // Stops view waiting for a picture, when its row is reused for something without one.
+    public static void cancel(ImageView view) {
+        Long previous = (Long) view.getTag();
+        if (previous != null) {
+            stopWaiting(view, previous);
+            view.setTag(null);
+        }
+    }
+
+    // Drops every picture (see ChantRepository.trimMemory).
+    public static void clear() {
+        cache.evictAll();
+    }
+
+    // Drops the least recently used half of the pictures.
+    public static void trim() {
+        cache.trimToSize(cache.size() / 2);
+    }
+
+    private static void stopWaiting(ImageView view, Long key) {
+        ArrayList<ImageView> views = waiting.get(key);
+        if (views != null) {
+            views.remove(view);
+            if (views.isEmpty()) {
+                waiting.remove(key);
+                wanted.remove(key);
+            }
+        }
+    }
+
+    // shows a picture that has just been drawn (or not, if bitmap is null) in the views waiting for it
+    private static void deliver(Long key, Bitmap bitmap) {
+        ArrayList<ImageView> views = waiting.remove(key);
+        wanted.remove(key);
+        if (views == null || bitmap == null) {
+            return; //nothing is waiting for it, or it couldn't be drawn and the placeholder stays
+        }
+        for (ImageView view : views) {
+            if (key.equals(view.getTag())) {
+                view.setTag(null);
+                view.setImageBitmap(bitmap);
+            }
+        }
+    }
+
+    // Draws the first line of a chant, as far as INCIPIT_WIDTH, into an alpha-only bitmap.
+    protected static Bitmap draw(Chant chant, int[] textWidths, int height) {
+        float scale = height / (float) INCIPIT_HEIGHT;
+        Bitmap bitmap = Bitmap.createBitmap(Math.round(INCIPIT_WIDTH * scale), height, Bitmap.Config.ALPHA_8);
+        ChantLayout layout = new ChantLayout(chant, textWidths, INCIPIT_WIDTH);
+        if (layout.lines.isEmpty()) {
+            return bitmap;
+        }
+        ChantLayout.StaffLine line = layout.lines.get(0);
+        Canvas canvas = new Canvas(bitmap);
+        AndroidChantCanvas chantCanvas = canvases.get();
+        chantCanvas.setScale(scale);
+        chantCanvas.setCanvas(canvas);
+        canvas.scale(scale, scale);
+        canvas.translate(0, -line.top);
+        new ChantRenderer(chant).drawStaffLine(chantCanvas, layout, line);
+        chantCanvas.setCanvas(null); //don't hold on to the bitmap
+        return bitmap;
+    }
+
+    private static class Render implements Runnable {
+        private final Context context;
+        private final int chantID;
+        private final int height;
+        private final Long key;
+
+        Render(Context context, int chantID, int height, Long key) {
+            this.context = context;
+            this.chantID = chantID;
+            this.height = height;
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            if (!wanted.contains(key)) {
+                return; //every view that wanted it has moved on to another chant
+            }
+            Bitmap bitmap = cache.get(key);
+            try {
+                if (bitmap == null) {
+                    //a chant that is only being previewed isn't put in the ChantRepository, where
+                    //it would push out the chants that are about to be opened
+                    PreparedChant prepared = ChantRepository.getIfCached(chantID);
+                    Chant chant = (prepared != null) ? prepared.chant : ChantLoader.load(context, chantID);
+                    int[] textWidths = (prepared != null) ? prepared.textWidths
+                            : ChantLoader.measureText(chant, GregorianChantView.newTextPaint());
+                    bitmap = draw(chant, textWidths, height);
+                    cache.put(key, bitmap);
+                }
+            } finally {
+                final Bitmap drawn = bitmap;
+                mainThread.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(key, drawn);
+                    }
+                });
+            }
+        }
+    }
+}
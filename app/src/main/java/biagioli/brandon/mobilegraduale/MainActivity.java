@@ -21,6 +21,11 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
+    public void displayBrowseChants(View view) {
+        Intent intent = new Intent(this, BrowseChants.class);
+        startActivity(intent);
+    }
+
     public void displayVotiveMassMenu(View view) {
         Intent intent = new Intent(this, VotiveMassMenu.class);
         startActivity(intent);
@@ -0,0 +1,100 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// The shapes of the notes and clefs, as Paths. Each shape is built once from its outline (see
+// NeumeOutlines), the first time this class is used, and then drawn wherever it's needed by
+// translating the canvas; the Paths are never changed after they are built, so they can be shared
+// by every GregorianChantView.
+public final class NeumeGlyphs {
+    public static final int PUNCTUM = ChantCanvas.PUNCTUM; //the glyphs that always have the same shape
+    public static final int QUILISMA = ChantCanvas.QUILISMA;
+    public static final int RHOMBUS = ChantCanvas.RHOMBUS;
+    public static final int DO_CLEF = ChantCanvas.DO_CLEF;
+    public static final int GLYPH_COUNT = ChantCanvas.GLYPH_COUNT;
+
+    private static final Path[] GLYPHS = new Path[GLYPH_COUNT];
+
+    // The diagonal stroke of a porrectus depends on how far it falls, so there is one Path for each
+    // distance (in half steps) that it might fall.
+    private static final int MAX_PORRECTUS_DROP = 16;
+    private static final Path[] PORRECTUS = new Path[2 * MAX_PORRECTUS_DROP + 1];
+
+    static {
+        for (int glyph = 0; glyph < GLYPH_COUNT; glyph++) {
+            GLYPHS[glyph] = buildPath(glyph);
+        }
+        for (int halfSteps = -MAX_PORRECTUS_DROP; halfSteps <= MAX_PORRECTUS_DROP; halfSteps++) {
+            PORRECTUS[halfSteps + MAX_PORRECTUS_DROP] = buildPorrectus(halfSteps / 2f);
+        }
+    }
+
+    // Builds a Path from an outline of NeumeOutlines.
+    private static class PathOutline implements NeumeOutlines.Outline {
+        protected final Path path = new Path();
+        private final RectF arcRectF = new RectF();
+
+        @Override
+        public void moveTo(float x, float y) {
+            path.moveTo(x, y);
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            path.lineTo(x, y);
+        }
+
+        @Override
+        public void arcTo(float left, float top, float right, float bottom, float startAngle, float sweepAngle) {
+            arcRectF.set(left, top, right, bottom);
+            path.arcTo(arcRectF, startAngle, sweepAngle);
+        }
+
+        @Override
+        public void close() {
+            path.close();
+        }
+    }
+
+    private NeumeGlyphs() {
+    }
+
+    // Draws one of the glyphs with its origin at the canvas's origin.
+    public static void draw(Canvas canvas, int glyph, Paint paint) {
+        canvas.drawPath(GLYPHS[glyph], paint);
+    }
+
+    // Returns one of the glyphs; the Path must not be changed.
+    public static Path getPath(int glyph) {
+        return GLYPHS[glyph];
+    }
+
+    // Draws the diagonal brush-stroke from the first note of a porrectus (which is drop staff
+    // spaces below the second note, or above it if drop is negative) to the second note.
+    public static void drawPorrectus(Canvas canvas, float drop, Paint paint) {
+        int halfSteps = Math.round(drop * 2);
+        if (halfSteps < -MAX_PORRECTUS_DROP || halfSteps > MAX_PORRECTUS_DROP) {
+            canvas.drawPath(buildPorrectus(drop), paint); //too far to be worth keeping
+            return;
+        }
+        canvas.drawPath(PORRECTUS[halfSteps + MAX_PORRECTUS_DROP], paint);
+    }
+
+    private static Path buildPath(int glyph) {
+        PathOutline outline = new PathOutline();
+        NeumeOutlines.outline(glyph, outline);
+        return outline.path;
+    }
+
+    private static Path buildPorrectus(float drop) {
+        PathOutline outline = new PathOutline();
+        NeumeOutlines.porrectus(drop, outline);
+        return outline.path;
+    }
+}
@@ -0,0 +1,37 @@
+package biagioli.brandon.mobilegraduale;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// A chant that is ready to be drawn: the chant itself, the width of the text of each syllable, and
+// (if it has been laid out) its layout at some width. None of these ever change, so a PreparedChant
+// can be shared between threads and Views (see ChantRepository).
+public class PreparedChant {
+    protected final Chant chant;
+    protected final int[] textWidths;
+    protected final ChantLayout layout; //null if the chant hasn't been laid out yet
+    protected final int size; //roughly how many bytes all of this takes up
+
+    public PreparedChant(Chant chant, int[] textWidths, ChantLayout layout) {
+        this.chant = chant;
+        this.textWidths = textWidths;
+        this.layout = layout;
+
+        //notes: a float, two ints' worth of flags and offsets, and two shorts each
+        int size = chant.noteCount * 14;
+        //syllables: four ints each (including the text's width), and the text itself
+        for (int i = 0; i < chant.syllableCount; i++) {
+            size += 16 + 40 + 2 * chant.syllableText[i].length();
+        }
+        if (layout != null) {
+            //each syllable is on one line, with its position and section
+            size += chant.syllableCount * 12 + layout.lines.size() * 100;
+        }
+        this.size = size;
+    }
+
+    // Returns this chant, laid out with the given layout instead.
+    public PreparedChant withLayout(ChantLayout layout) {
+        return new PreparedChant(chant, textWidths, layout);
+    }
+}
@@ -0,0 +1,68 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+
+import java.util.Calendar;
+
+import biagioli.brandon.mobilegraduale.LiturgicalCalendar.Celebration;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Which chants in the app are the propers of which celebration of the liturgical year. The table
+// is built once, with an entry for each Celebration (by its ordinal), holding the names (in
+// chants.xml) of the introit, gradual, alleluia, offertory and communion, in that order; a part
+// that isn't in the app yet is null, and so is every part of a celebration that isn't in the app at all.
+// The names are only turned into chant IDs (see ChantFile) when the propers are asked for.
+public final class Propers {
+    public static final int INTROIT = 0; //the parts of the propers, as indexes into the table's entries
+    public static final int GRADUAL = 1;
+    public static final int ALLELUIA = 2;
+    public static final int OFFERTORY = 3;
+    public static final int COMMUNION = 4;
+    public static final int PART_COUNT = 5;
+
+    private static final String[] NONE = new String[PART_COUNT];
+    private static final String[][] table = new String[Celebration.values().length][];
+
+    static {
+        put(Celebration.ADVENT_1, "Introit_Ad_te_levavi", "Gradual_Universi_qui_te_exspectant",
+                "Alleluia_Ostende_nobis", "Offertory_Ad_te_Domine_levavi",
+                "Communion_Dominus_dabit_benignitatem");
+        put(Celebration.ADVENT_2, "Introit_Populus_Sion", "Gradual_Ex_Sion",
+                "Alleluia_Laetatus_sum", "Offertory_Deus_tu_convertens",
+                "Communion_Ierusalem_surge");
+        put(Celebration.ADVENT_3, "Introit_Gaudete_in_Domino", "Gradual_Qui_sedes_Domine",
+                "Alleluia_Excita_Domine", null, null);
+    }
+
+    private Propers() {
+    }
+
+    private static void put(Celebration celebration, String introit, String gradual, String alleluia,
+                            String offertory, String communion) {
+        table[celebration.ordinal()] = new String[]{introit, gradual, alleluia, offertory, communion};
+    }
+
+    // Returns the IDs of the propers of a celebration, indexed by INTROIT and so on; a part that
+    // isn't in the app is -1.
+    public static int[] of(Context context, Celebration celebration) {
+        String[] names = table[celebration.ordinal()];
+        if (names == null) {
+            names = NONE;
+        }
+        ChantFile chants = ChantLoader.chants(context);
+        int[] propers = new int[PART_COUNT];
+        for (int part = 0; part < PART_COUNT; part++) {
+            propers[part] = (names[part] != null) ? chants.find(names[part]) : -1;
+        }
+        return propers;
+    }
+
+    // Returns the celebration of today's date, on this device.
+    public static Celebration today() {
+        Calendar today = Calendar.getInstance();
+        return LiturgicalCalendar.celebrationOn(today.get(Calendar.YEAR), today.get(Calendar.MONTH) + 1,
+                today.get(Calendar.DAY_OF_MONTH));
+    }
+}
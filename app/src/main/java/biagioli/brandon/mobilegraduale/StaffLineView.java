@@ -0,0 +1,45 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.view.ViewGroup;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// One row of a GregorianChantView: a single staff line of the chant, or the error messages above
+// the first line. The row is reused for other lines as the chant scrolls, so it only knows which
+// row it is showing at the moment, and asks the GregorianChantView to draw it.
+public class StaffLineView extends ChantView {
+    protected final GregorianChantView chantView;
+    protected int row;
+    protected int height;
+
+    public StaffLineView(Context context, GregorianChantView chantView) {
+        super(context);
+        this.chantView = chantView;
+        setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+    }
+
+    // Shows the given row, which is height pixels tall.
+    public void bind(int row, int height) {
+        this.row = row;
+        if (this.height != height) {
+            this.height = height;
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    @Override
+    public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec), height);
+    }
+
+    @Override
+    public void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        chantView.drawRow(canvas, row);
+    }
+}
@@ -0,0 +1,54 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.graphics.Paint;
+import android.support.v4.util.LruCache;
+import android.util.SparseArray;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// The widths of syllables' text that have already been measured, by text size. The chants share
+// most of their syllables ("Do", "mi", "ne", "us" and so on), so once a few chants have been opened,
+// measuring another one is mostly a matter of looking its syllables up here.
+//
+// Only the text size is part of the key, since every syllable is drawn in the same typeface. The
+// text is measured in units (see GregorianChantView), so the same widths are used at every zoom.
+// There is a separate LruCache for each text size, each holding at most MAX_ENTRIES widths.
+//
+// The cache is safe to use from any thread (ChantPreloader measures chants on its background thread).
+public final class TextWidthCache {
+    private static final int MAX_ENTRIES = 2048; //the corpus has far fewer distinct syllables than this
+
+    private static final SparseArray<LruCache<String, Integer>> caches = new SparseArray<>(); //by text size
+
+    private TextWidthCache() {
+    }
+
+    // Returns the width of text drawn with paint, as paint.measureText() would, truncated to an int.
+    public static int measure(String text, Paint paint) {
+        LruCache<String, Integer> cache = cacheFor(paint.getTextSize());
+        Integer width = cache.get(text);
+        if (width == null) {
+            width = (int) paint.measureText(text);
+            cache.put(text, width);
+        }
+        return width;
+    }
+
+    // Forgets every width; they are just measured again when they are needed.
+    public static synchronized void clear() {
+        for (int i = 0; i < caches.size(); i++) {
+            caches.valueAt(i).evictAll();
+        }
+    }
+
+    private static synchronized LruCache<String, Integer> cacheFor(float textSize) {
+        int key = Float.floatToIntBits(textSize);
+        LruCache<String, Integer> cache = caches.get(key);
+        if (cache == null) {
+            cache = new LruCache<>(MAX_ENTRIES);
+            caches.put(key, cache);
+        }
+        return cache;
+    }
+}
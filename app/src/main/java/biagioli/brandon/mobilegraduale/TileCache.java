@@ -0,0 +1,297 @@
+package biagioli.brandon.mobilegraduale;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Pictures of the first screen of each chant that has been shown, kept on disk, so that opening a
+// chant that isn't in memory (when the app has just started, say) can show what it will look like
+// straight away, while the chant is loaded and laid out (see GregorianChantView).
+//
+// A chant at a given width, density and zoom always looks the same, so the pictures are kept under
+// a key made of those and of a hash of the chant itself (and the app's version, in case the drawing
+// changes). Each key has one file, holding a PNG tile for the error messages, if there are any,
+// and for each staff line down to the bottom of the screen. The tiles are written on a background
+// thread after the chant is first drawn, and only if they aren't there already.
+//
+// The files are kept to MAX_SIZE bytes in all: reading a file marks it as used, and writing one
+// deletes the least recently used files until they fit again. The cache is in the app's cache
+// directory, so the system can clear it too.
+public final class TileCache {
+    private static final long MAX_SIZE = 8 * 1024 * 1024;
+    private static final int MAGIC = 0x4d475449; //"MGTI"
+    private static final String DIRECTORY = "tiles";
+
+    //the tiles are read, and drawn and written, one chant at a time, off the main thread
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //stay out of the way of the main thread
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "TileCache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private TileCache() {
+    }
+
+    // The tiles of a chant's first screen, each at its distance from the top of the chant in pixels.
+    public static class Tiles {
+        protected final Bitmap[] bitmaps;
+        protected final int[] tops;
+
+        protected Tiles(Bitmap[] bitmaps, int[] tops) {
+            this.bitmaps = bitmaps;
+            this.tops = tops;
+        }
+
+        public void draw(Canvas canvas) {
+            for (int i = 0; i < bitmaps.length; i++) {
+                canvas.drawBitmap(bitmaps[i], 0, tops[i], null);
+            }
+        }
+
+        public void recycle() {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    // Returns the key of a chant's tiles, when it is width pixels wide at the given zoom.
+    public static String key(Context context, int chantID, int width, float zoom) {
+        ChantFile chants = ChantLoader.chants(context);
+        long hash = chants.contains(chantID) ? chants.contentHash(chantID) : 0;
+        return Long.toHexString(hash) + "-" + width + "-"
+                + context.getResources().getDisplayMetrics().densityDpi + "-" + Math.round(zoom * 100)
+                + "-" + BuildConfig.VERSION_CODE;
+    }
+
+    // Told the tiles that have been read for a chant (see readLater).
+    public interface Listener {
+        void onTilesRead(Tiles tiles);
+    }
+
+    // Reads the tiles of a chant that is width pixels wide at the given zoom on the cache's own
+    // thread, so that they are decoded while the chant is loaded on another, and hands them to
+    // listener on the main thread if there are any.
+    public static void readLater(Context context, final int chantID, final int width, final float zoom,
+                                 final Listener listener) {
+        final Context appContext = context.getApplicationContext(); //don't hold on to an Activity
+        final Handler mainThread = new Handler(Looper.getMainLooper());
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                //the key reads chants.bin, so it's worked out here too
+                final Tiles tiles = read(appContext, key(appContext, chantID, width, zoom));
+                if (tiles != null) {
+                    mainThread.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onTilesRead(tiles);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Returns the tiles with the given key, or null if there aren't any (or they can't be read).
+    // This reads from disk, so it is only called on a background thread. A file is never read while
+    // it is being written, since it is written under another name first.
+    public static Tiles read(Context context, String key) {
+        File file = new File(new File(context.getCacheDir(), DIRECTORY), key);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        Bitmap[] bitmaps = new Bitmap[0];
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int count = in.readInt();
+            bitmaps = new Bitmap[count];
+            int[] tops = new int[count];
+            for (int i = 0; i < count; i++) {
+                tops[i] = in.readInt();
+                byte[] png = new byte[in.readInt()];
+                in.readFully(png);
+                bitmaps[i] = BitmapFactory.decodeByteArray(png, 0, png.length);
+                if (bitmaps[i] == null) {
+                    throw new IOException("tile " + i + " of " + key + " isn't a picture");
+                }
+            }
+            file.setLastModified(System.currentTimeMillis()); //it's been used
+            return new Tiles(bitmaps, tops);
+        } catch (IOException e) {
+            for (Bitmap bitmap : bitmaps) {
+                if (bitmap != null) {
+                    bitmap.recycle();
+                }
+            }
+            file.delete(); //it won't be any better next time
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //nothing to do; the tiles have already been read (or not)
+                }
+            }
+        }
+    }
+
+    // Starts saving the tiles of a chant's first screen, which is width by height pixels, as the
+    // chant is laid out now, at scale pixels per unit, if they aren't already saved. Only called
+    // from the main thread.
+    public static void save(Context context, final int chantID, final Chant chant, final ChantLayout layout,
+                            final float scale, final float zoom, final int width, final int height) {
+        final Context appContext = context.getApplicationContext(); //don't hold on to an Activity
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                File directory = new File(appContext.getCacheDir(), DIRECTORY);
+                File file = new File(directory, key(appContext, chantID, width, zoom));
+                if (file.isFile()) {
+                    return;
+                }
+                try {
+                    write(file, chant, layout, scale, height);
+                    evict(directory);
+                } catch (IOException e) {
+                    file.delete(); //there's no room, or no cache directory; it's only a cache
+                }
+            }
+        });
+    }
+
+    private static void write(File file, Chant chant, ChantLayout layout, float scale, int height)
+            throws IOException {
+        //the rows are laid out the way GregorianChantView lays them out
+        int errorHeight = Math.round(layout.top * scale);
+        int lineHeight = Math.round(ChantGeometry.STAFF_LINE_HEIGHT * scale);
+        int width = Math.round(layout.width * scale);
+        int errorRows = (errorHeight > 0) ? 1 : 0;
+        int lineCount = 0; //the lines that start on the screen
+        while (lineCount < layout.lines.size() && errorHeight + lineCount * lineHeight < height) {
+            lineCount++;
+        }
+        int count = errorRows + lineCount;
+
+        ChantRenderer renderer = new ChantRenderer(chant);
+        AndroidChantCanvas chantCanvas = new AndroidChantCanvas();
+        chantCanvas.setScale(scale);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        file.getParentFile().mkdirs();
+        File partial = new File(file.getPath() + ".part");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            for (int tile = 0; tile < count; tile++) {
+                Bitmap bitmap;
+                int top;
+                if (tile < errorRows) {
+                    top = 0;
+                    bitmap = Bitmap.createBitmap(width, errorHeight, Bitmap.Config.ARGB_8888);
+                    Canvas canvas = new Canvas(bitmap);
+                    chantCanvas.setCanvas(canvas);
+                    canvas.scale(scale, scale);
+                    renderer.drawErrors(chantCanvas);
+                } else {
+                    //the tile takes in the notes above and below the staff, which go outside the row
+                    int line = tile - errorRows;
+                    ChantLayout.StaffLine staffLine = layout.lines.get(line);
+                    int inkTop = (int) Math.floor((staffLine.inkTop - staffLine.top) * scale);
+                    int inkBottom = (int) Math.ceil((staffLine.inkBottom - staffLine.top) * scale);
+                    top = errorHeight + line * lineHeight + inkTop;
+                    bitmap = Bitmap.createBitmap(width, inkBottom - inkTop, Bitmap.Config.ARGB_8888);
+                    Canvas canvas = new Canvas(bitmap);
+                    chantCanvas.setCanvas(canvas);
+                    canvas.translate(0, -inkTop);
+                    canvas.scale(scale, scale);
+                    canvas.translate(0, -staffLine.top);
+                    renderer.drawStaffLine(chantCanvas, layout, staffLine);
+                }
+                png.reset();
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+                bitmap.recycle();
+                out.writeInt(top);
+                out.writeInt(png.size());
+                png.writeTo(out);
+            }
+        } finally {
+            chantCanvas.setCanvas(null);
+            out.close();
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("couldn't save " + file);
+        }
+    }
+
+    // deletes the least recently used files until the rest fit in MAX_SIZE
+    private static void evict(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_SIZE) {
+            return;
+        }
+        final long[] used = new long[files.length]; //read once, since the sort asks many times
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            used[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return (used[a] < used[b]) ? -1 : (used[a] > used[b]) ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < order.length && size > MAX_SIZE; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// The chants the benchmarks run on: every chant in the app's chants.xml (the same ones that
+// ChantCompiler compiles), and stress chants made up from them that are much longer than any
+// real chant.
+//
+// A stress chant is the syllables of the real chants, repeated in order until there are enough of
+// them, and split into sections that each start with a different clef. Notes are named relative
+// to the clef, so every syllable still parses the same way whichever clef it ends up under.
+public final class ChantCorpus {
+    // set by the jmh task in benchmark/build.gradle; the default works when run from benchmark/
+    private static final String CHANTS_PROPERTY = "chant.corpus";
+    private static final String DEFAULT_CHANTS = "../app/src/main/chants/chants.xml";
+
+    private static final String[] CLEFS = { "CLEF(do,4)", "CLEF(fa,3)", "CLEF(do,3)", "CLEF(do,1)" };
+
+    private static List<String> chants;
+
+    private ChantCorpus() {
+    }
+
+    // Returns the text of every chant in chants.xml.
+    public static synchronized List<String> chants() throws Exception {
+        if (chants == null) {
+            File chantsFile = new File(System.getProperty(CHANTS_PROPERTY, DEFAULT_CHANTS));
+            NodeList elements = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(chantsFile).getElementsByTagName("chant");
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < elements.getLength(); i++) {
+                texts.add(elements.item(i).getTextContent());
+            }
+            chants = texts;
+        }
+        return chants;
+    }
+
+    // Returns the text of a chant with the given number of syllables (counting bars), split into
+    // the given number of sections.
+    public static String stressChant(int syllables, int sections) throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (String chant : chants()) {
+            for (String token : chant.split(" ")) {
+                if (!token.isEmpty() && !token.startsWith("MODE(") && !token.startsWith("CLEF(")) {
+                    tokens.add(token);
+                }
+            }
+        }
+
+        StringBuilder text = new StringBuilder("MODE(one)");
+        int perSection = (syllables + sections - 1) / sections;
+        for (int i = 0; i < syllables; i++) {
+            if (i % perSection == 0) {
+                text.append(' ').append(CLEFS[(i / perSection) % CLEFS.length]);
+            }
+            text.append(' ').append(tokens.get(i % tokens.size()));
+        }
+        return text.toString();
+    }
+
+    // Returns the width of each syllable's text, as the app would measure it. The benchmarks can't
+    // measure text, so this is roughly the width of the app's 60px font.
+    public static int[] textWidths(Chant chant) {
+        int[] textWidths = new int[chant.syllableCount];
+        for (int i = 0; i < chant.syllableCount; i++) {
+            textWidths[i] = chant.syllableText[i].length() * 30;
+        }
+        return textWidths;
+    }
+}
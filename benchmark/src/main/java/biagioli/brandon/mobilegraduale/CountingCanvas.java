@@ -0,0 +1,59 @@
+package biagioli.brandon.mobilegraduale;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// A ChantCanvas that draws nothing, and just counts the drawing operations it is given, so that the
+// benchmarks measure the renderer rather than a graphics library.
+public class CountingCanvas implements ChantCanvas {
+    public long drawOps; //every draw call, including glyphs
+    public long glyphs;
+
+    @Override
+    public void save() {
+    }
+
+    @Override
+    public void restore() {
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        drawOps++;
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, int paint) {
+        drawOps++;
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, int paint) {
+        drawOps++;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, int paint) {
+        drawOps++;
+    }
+
+    @Override
+    public void drawGlyph(int glyph) {
+        drawOps++;
+        glyphs++;
+    }
+
+    @Override
+    public void drawPorrectus(float drop) {
+        drawOps++;
+        glyphs++;
+    }
+}
@@ -0,0 +1,97 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// How long ChantLayout takes to lay out already-parsed chants at each width. The score is the
+// time for one layout of the whole corpus, or of one stress chant. breakStress times choosing the
+// line breaks alone (see ChantLayout.breakLines), without building the lines.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LayoutBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Width {
+        @Param({"720", "1080", "1440"}) //some common screen widths
+        int width;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        final List<Chant> chants = new ArrayList<>();
+        final List<int[]> textWidths = new ArrayList<>();
+
+        @Setup
+        public void setUp() throws Exception {
+            ChantParser parser = new ChantParser();
+            for (String text : ChantCorpus.chants()) {
+                Chant chant = parser.parse(text);
+                chants.add(chant);
+                textWidths.add(ChantCorpus.textWidths(chant));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Stress {
+        @Param({"10000", "50000"})
+        int syllables;
+        @Param({"8"})
+        int sections;
+        Chant chant;
+        int[] textWidths;
+        int[] syllableWidths; //what breakLines takes: the wider of each syllable's text and notes
+        int[] clefsAt;
+
+        @Setup
+        public void setUp() throws Exception {
+            chant = new ChantParser().parse(ChantCorpus.stressChant(syllables, sections));
+            textWidths = ChantCorpus.textWidths(chant);
+            syllableWidths = new int[chant.syllableCount];
+            for (int i = 0; i < chant.syllableCount; i++) {
+                syllableWidths[i] = Math.max(textWidths[i], chant.syllableNoteWidth[i]);
+            }
+            clefsAt = new int[chant.syllableCount + 1];
+            for (int s = 0; s < chant.sectionCount; s++) {
+                clefsAt[chant.sectionStart[s]]++;
+            }
+        }
+    }
+
+    @Benchmark
+    public void layoutCorpus(Corpus corpus, Width width, Blackhole blackhole) {
+        for (int i = 0; i < corpus.chants.size(); i++) {
+            blackhole.consume(new ChantLayout(corpus.chants.get(i), corpus.textWidths.get(i), width.width));
+        }
+    }
+
+    @Benchmark
+    public ChantLayout layoutStress(Stress stress, Width width) {
+        return new ChantLayout(stress.chant, stress.textWidths, width.width);
+    }
+
+    @Benchmark
+    public int[] breakStress(Stress stress, Width width) {
+        return ChantLayout.breakLines(stress.chant, stress.syllableWidths, stress.clefsAt, width.width);
+    }
+}
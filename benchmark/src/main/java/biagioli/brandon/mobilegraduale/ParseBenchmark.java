@@ -0,0 +1,89 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// How fast ChantParser parses. The score is parses per second; the "syllables" counter is the
+// syllables (including bars) parsed per second, which can be compared across chants of any length.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        List<String> texts;
+
+        @Setup
+        public void setUp() throws Exception {
+            texts = ChantCorpus.chants();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Stress {
+        @Param({"10000", "50000"})
+        int syllables;
+        @Param({"1", "8"})
+        int sections;
+        String text;
+
+        @Setup
+        public void setUp() throws Exception {
+            text = ChantCorpus.stressChant(syllables, sections);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Parser {
+        final ChantParser parser = new ChantParser();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long syllables;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            syllables = 0;
+        }
+    }
+
+    // parses every chant in chants.xml
+    @Benchmark
+    public void parseCorpus(Corpus corpus, Parser parser, Counters counters, Blackhole blackhole) {
+        for (int i = 0; i < corpus.texts.size(); i++) {
+            Chant chant = parser.parser.parse(corpus.texts.get(i));
+            counters.syllables += chant.syllableCount;
+            blackhole.consume(chant);
+        }
+    }
+
+    @Benchmark
+    public Chant parseStress(Stress stress, Parser parser, Counters counters) {
+        Chant chant = parser.parser.parse(stress.text);
+        counters.syllables += chant.syllableCount;
+        return chant;
+    }
+}
@@ -0,0 +1,131 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// How fast ChantRenderer draws laid-out chants, onto a canvas that only counts what it is given
+// (see CountingCanvas). The score is frames per second. The "drawOps" and "glyphs" counters are
+// per second as well, so drawOps divided by the score is the number of draw calls in each frame.
+//
+// drawCorpus draws every line of every chant as one frame. drawStressFrame draws what would be on
+// a screen of a stress chant, the way GregorianChantView does, scrolling down a screen each frame.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RenderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Width {
+        @Param({"720", "1440"})
+        int width;
+    }
+
+    @State(Scope.Thread)
+    public static class Corpus {
+        final List<ChantRenderer> renderers = new ArrayList<>();
+        final List<ChantLayout> layouts = new ArrayList<>();
+
+        @Setup
+        public void setUp(Width width) throws Exception {
+            ChantParser parser = new ChantParser();
+            for (String text : ChantCorpus.chants()) {
+                Chant chant = parser.parse(text);
+                renderers.add(new ChantRenderer(chant));
+                layouts.add(new ChantLayout(chant, ChantCorpus.textWidths(chant), width.width));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Stress {
+        @Param({"10000"})
+        int syllables;
+        @Param({"8"})
+        int sections;
+        @Param({"1920"}) //the height of the screen
+        int screenHeight;
+        ChantRenderer renderer;
+        ChantLayout layout;
+        int screenTop;
+
+        @Setup
+        public void setUp(Width width) throws Exception {
+            Chant chant = new ChantParser().parse(ChantCorpus.stressChant(syllables, sections));
+            renderer = new ChantRenderer(chant);
+            layout = new ChantLayout(chant, ChantCorpus.textWidths(chant), width.width);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long drawOps;
+        public long glyphs;
+        final CountingCanvas canvas = new CountingCanvas();
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            drawOps = 0;
+            glyphs = 0;
+        }
+
+        // adds what the canvas counted since the last call
+        void count() {
+            drawOps += canvas.drawOps;
+            glyphs += canvas.glyphs;
+            canvas.drawOps = 0;
+            canvas.glyphs = 0;
+        }
+    }
+
+    @Benchmark
+    public void drawCorpus(Corpus corpus, Counters counters) {
+        for (int c = 0; c < corpus.renderers.size(); c++) {
+            ChantRenderer renderer = corpus.renderers.get(c);
+            ChantLayout layout = corpus.layouts.get(c);
+            renderer.drawErrors(counters.canvas);
+            for (int l = 0; l < layout.lines.size(); l++) {
+                renderer.drawStaffLine(counters.canvas, layout, layout.lines.get(l));
+            }
+        }
+        counters.count();
+    }
+
+    @Benchmark
+    public void drawStressFrame(Stress stress, Counters counters) {
+        ChantLayout layout = stress.layout;
+        int top = stress.screenTop;
+        int bottom = top + stress.screenHeight;
+        //notes high above or far below the staff are drawn outside of their line, so its ink is what counts
+        for (int l = 0; l < layout.lines.size(); l++) {
+            ChantLayout.StaffLine line = layout.lines.get(l);
+            if (line.inkBottom > top && line.inkTop < bottom) {
+                stress.renderer.drawStaffLine(counters.canvas, layout, line);
+            }
+        }
+        counters.count();
+
+        //scroll down a screen, back to the top after the end
+        stress.screenTop = (bottom < layout.height) ? bottom : 0;
+    }
+}
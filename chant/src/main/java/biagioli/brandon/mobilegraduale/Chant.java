@@ -0,0 +1,171 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Created by Brandon Biagioli on 4/11/2016.
+ */
+// A parsed chant: everything ChantParser learned from a resource string. Nothing in here knows
+// about Views or Paints, so a chant can be parsed anywhere (including off the UI thread).
+//
+// Rather than an object for every note and syllable, a chant is kept in parallel arrays: note n has
+// the value noteValue[n], the flags noteFlags[n] (one bit per NoteFlag), and so on. The notes of
+// syllable i are the notes from syllableNoteStart[i] up to (not including) syllableNoteStart[i + 1],
+// and the syllables of section s are the syllables from sectionStart[s] up to sectionStart[s + 1].
+// This keeps even a long chant down to a handful of objects. Once it is built, a Chant is never changed.
+public class Chant {
+    public enum Mode { ONE,TWO,THREE,FOUR,FIVE,SIX,SEVEN,EIGHT } // modes in gregorian chant
+    public enum Clef { DO,FA } //gregorian chant has two possible clefs
+    public enum NoteFlag { //these flags are all used for formatting notes in one way or another
+        DOT,RHOMBUS,PORRECTUS,SECOND_PORRECTUS,THIRD_PORRECTUS,V_EPISEMA,H_EPISEMA,QUILISMA,LIQUESCENT,
+        SCANDICUS,TORCULUS,SECOND_TORCULUS,THIRD_TORCULUS,PEAK,ASCENDING,FIRST_DESCENDING,SECOND_DESCENDING,
+        JUMP,STACKED_ASCENDING,QUARTER_BAR,HALF_BAR,FULL_BAR,DOUBLE_BAR,REPEATED,CLIVIS,SECOND_CLIVIS;
+
+        public final int bit; //this flag's bit in noteFlags
+
+        NoteFlag() {
+            bit = 1 << ordinal();
+        }
+    }
+
+    public static final int BAR_FLAGS = NoteFlag.QUARTER_BAR.bit | NoteFlag.HALF_BAR.bit
+            | NoteFlag.FULL_BAR.bit | NoteFlag.DOUBLE_BAR.bit;
+
+    public static final int WORD_END = 1; //the bits of syllableBits
+    public static final int HAS_FLAT = 2;
+    public static final int HAS_NEUTRAL = 4;
+    public static final int HAS_NOTES = 8; //a syllable such as "Ps." has no notes, not even a bar
+
+    protected Mode mode;
+    protected LinkedList<String> errorMessages = new LinkedList<>();
+
+    //sections: a new section starts at every clef (usually there's only one)
+    protected int sectionCount;
+    protected Clef[] sectionClef;
+    protected int[] sectionClefLine; //the vertical position of each clef
+    protected int[] sectionStart; //sectionCount + 1 entries
+
+    //syllables, including bar lines (a bar line has " " for text, and one note with a bar flag)
+    protected int syllableCount;
+    protected String[] syllableText;
+    protected int[] syllableBits;
+    protected int[] syllableNoteWidth; //the width of the notes alone; the text is measured by the View
+    protected int[] syllableNoteStart; //syllableCount + 1 entries
+
+    //notes
+    protected int noteCount;
+    protected float[] noteValue; //1 to 4 correspond to staff lines, and intermediate, higher, and
+                                //lower values are possible
+    protected int[] noteFlags;
+    protected short[] noteOffset; //the distance on the canvas that the next note is offset from this one
+    protected short[] noteEpisemaHeight;
+
+    // true if flags (from noteFlags) has the given flag
+    public static boolean has(int flags, NoteFlag flag) {
+        return (flags & flag.bit) != 0;
+    }
+
+    public boolean hasNotes(int syllable) {
+        return (syllableBits[syllable] & HAS_NOTES) != 0;
+    }
+
+    public boolean isBar(int syllable) {
+        return hasNotes(syllable) && (noteFlags[syllableNoteStart[syllable]] & BAR_FLAGS) != 0;
+    }
+
+    // Builds a Chant one piece at a time; used by ChantParser and ChantFile. The arrays grow as
+    // needed, and are trimmed to size when the Chant is built.
+    public static class Builder {
+        private final Chant chant = new Chant();
+
+        public Builder() {
+            chant.sectionClef = new Clef[2];
+            chant.sectionClefLine = new int[2];
+            chant.sectionStart = new int[3];
+            chant.syllableText = new String[64];
+            chant.syllableBits = new int[64];
+            chant.syllableNoteWidth = new int[64];
+            chant.syllableNoteStart = new int[65];
+            chant.noteValue = new float[256];
+            chant.noteFlags = new int[256];
+            chant.noteOffset = new short[256];
+            chant.noteEpisemaHeight = new short[256];
+        }
+
+        public Builder mode(Mode mode) {
+            chant.mode = mode;
+            return this;
+        }
+
+        public Builder error(String message) {
+            chant.errorMessages.add(message);
+            return this;
+        }
+
+        public Builder clef(Clef clef, int line) {
+            int s = chant.sectionCount;
+            if (s == chant.sectionClef.length) {
+                chant.sectionClef = Arrays.copyOf(chant.sectionClef, s * 2);
+                chant.sectionClefLine = Arrays.copyOf(chant.sectionClefLine, s * 2);
+                chant.sectionStart = Arrays.copyOf(chant.sectionStart, s * 2 + 1);
+            }
+            chant.sectionClef[s] = clef;
+            chant.sectionClefLine[s] = line;
+            chant.sectionStart[s] = chant.syllableCount;
+            chant.sectionCount++;
+            return this;
+        }
+
+        // Adds a note to the syllable that will be added next.
+        public Builder note(float value, int flags, int offset, int episemaHeight) {
+            int n = chant.noteCount;
+            if (n == chant.noteValue.length) {
+                chant.noteValue = Arrays.copyOf(chant.noteValue, n * 2);
+                chant.noteFlags = Arrays.copyOf(chant.noteFlags, n * 2);
+                chant.noteOffset = Arrays.copyOf(chant.noteOffset, n * 2);
+                chant.noteEpisemaHeight = Arrays.copyOf(chant.noteEpisemaHeight, n * 2);
+            }
+            chant.noteValue[n] = value;
+            chant.noteFlags[n] = flags;
+            chant.noteOffset[n] = (short) offset;
+            chant.noteEpisemaHeight[n] = (short) episemaHeight;
+            chant.noteCount++;
+            return this;
+        }
+
+        // Adds a syllable to the current section; its notes are the ones added since the last syllable.
+        public Builder syllable(String text, int bits, int noteWidth) {
+            int i = chant.syllableCount;
+            if (i == chant.syllableText.length) {
+                chant.syllableText = Arrays.copyOf(chant.syllableText, i * 2);
+                chant.syllableBits = Arrays.copyOf(chant.syllableBits, i * 2);
+                chant.syllableNoteWidth = Arrays.copyOf(chant.syllableNoteWidth, i * 2);
+                chant.syllableNoteStart = Arrays.copyOf(chant.syllableNoteStart, i * 2 + 1);
+            }
+            chant.syllableText[i] = text;
+            chant.syllableBits[i] = bits;
+            chant.syllableNoteWidth[i] = noteWidth;
+            chant.syllableCount++;
+            chant.syllableNoteStart[chant.syllableCount] = chant.noteCount;
+            return this;
+        }
+
+        public Chant build() {
+            Chant c = chant;
+            c.sectionClef = Arrays.copyOf(c.sectionClef, c.sectionCount);
+            c.sectionClefLine = Arrays.copyOf(c.sectionClefLine, c.sectionCount);
+            c.sectionStart = Arrays.copyOf(c.sectionStart, c.sectionCount + 1);
+            c.sectionStart[c.sectionCount] = c.syllableCount;
+            c.syllableText = Arrays.copyOf(c.syllableText, c.syllableCount);
+            c.syllableBits = Arrays.copyOf(c.syllableBits, c.syllableCount);
+            c.syllableNoteWidth = Arrays.copyOf(c.syllableNoteWidth, c.syllableCount);
+            c.syllableNoteStart = Arrays.copyOf(c.syllableNoteStart, c.syllableCount + 1);
+            c.noteValue = Arrays.copyOf(c.noteValue, c.noteCount);
+            c.noteFlags = Arrays.copyOf(c.noteFlags, c.noteCount);
+            c.noteOffset = Arrays.copyOf(c.noteOffset, c.noteCount);
+            c.noteEpisemaHeight = Arrays.copyOf(c.noteEpisemaHeight, c.noteCount);
+            return c;
+        }
+    }
+}
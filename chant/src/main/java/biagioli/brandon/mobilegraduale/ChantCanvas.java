@@ -0,0 +1,47 @@
+package biagioli.brandon.mobilegraduale;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// What ChantRenderer draws a chant onto. In the app this is an android.graphics.Canvas (see
+// AndroidChantCanvas); the same drawing code can then also run on a plain JVM, for tests and tools.
+//
+// Instead of Paint objects, everything is drawn with one of the paints below, which the canvas
+// supplies; and the note shapes are drawn as glyphs, which the canvas supplies as well.
+public interface ChantCanvas {
+    int TEXT_PAINT = 0; //the paints
+    int STAFF_PAINT = 1;
+    int NOTE_PAINT = 2;
+    int EPISEMA_PAINT = 3;
+    int ERROR_PAINT = 4;
+    int PAINT_COUNT = 5;
+
+    int PUNCTUM = 0; //the glyphs that always have the same shape (see NeumeGlyphs)
+    int QUILISMA = 1;
+    int RHOMBUS = 2;
+    int DO_CLEF = 3;
+    int GLYPH_COUNT = 4;
+
+    void save();
+
+    void restore();
+
+    void translate(float dx, float dy);
+
+    void scale(float sx, float sy);
+
+    void drawLine(float startX, float startY, float stopX, float stopY, int paint);
+
+    void drawCircle(float cx, float cy, float radius, int paint);
+
+    void drawRect(float left, float top, float right, float bottom, int paint);
+
+    void drawText(String text, float x, float y, int paint);
+
+    // Draws one of the glyphs, in the note paint, with its origin at the canvas's origin.
+    void drawGlyph(int glyph);
+
+    // Draws the diagonal brush-stroke from the first note of a porrectus (which is drop staff
+    // spaces below the second note, or above it if drop is negative) to the second note.
+    void drawPorrectus(float drop);
+}
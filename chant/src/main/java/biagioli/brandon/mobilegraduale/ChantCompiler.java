@@ -0,0 +1,107 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Run by the build (see compileChants in app/build.gradle). This parses every chant in chants.xml,
+// and writes them all to chants.bin (see ChantFile), which the app loads instead of parsing the
+// chant itself, along with the index of their words for searching, search.bin (see ChantIndex),
+// and the index of their melodies, melody.bin (see MelodyIndex).
+// A chant is a <chant> with a name and a "part" attribute (introit, gradual, and so on).
+//
+// If any chant has an error, the errors are printed and the build fails, so that a mistake in a
+// chant is found while building instead of showing up as red text in the app.
+public class ChantCompiler {
+
+    // args: the chants.xml to read, and the directory to write chants.bin, search.bin and melody.bin to
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: ChantCompiler <chants.xml> <output directory>");
+            System.exit(2);
+        }
+        File chantsFile = new File(args[0]);
+        File outputDir = new File(args[1]);
+
+        List<String> names = new ArrayList<>();
+        List<String> parts = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        compile(chantsFile, names, parts, chants, errors);
+
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println(chantsFile + ": " + error);
+            }
+            System.exit(1);
+        }
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputDir, ChantFile.ASSET_NAME)));
+        try {
+            ChantFile.write(out, names, parts, chants);
+        } finally {
+            out.close();
+        }
+        out = new BufferedOutputStream(new FileOutputStream(new File(outputDir, ChantIndex.ASSET_NAME)));
+        try {
+            ChantIndex.build(names, chants).write(out);
+        } finally {
+            out.close();
+        }
+        out = new BufferedOutputStream(new FileOutputStream(new File(outputDir, MelodyIndex.ASSET_NAME)));
+        try {
+            MelodyIndex.build(names, chants).write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Compiled " + chants.size() + " chants from " + chantsFile);
+    }
+
+    // Parses every chant in chantsFile, adding the name and Chant of each to names and chants,
+    // and adding a message to errors for each problem found.
+    public static void compile(File chantsFile, List<String> names, List<Chant> chants, List<String> errors)
+            throws Exception {
+        compile(chantsFile, names, new ArrayList<String>(), chants, errors);
+    }
+
+    // The same, adding the part of each chant to parts as well.
+    public static void compile(File chantsFile, List<String> names, List<String> parts, List<Chant> chants,
+                               List<String> errors) throws Exception {
+        NodeList elements = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(chantsFile).getElementsByTagName("chant");
+        ChantParser parser = new ChantParser();
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            String name = element.getAttribute("name");
+            if (name.isEmpty() || !element.hasAttribute("part")) {
+                errors.add("chant " + (i + 1) + ": Every chant needs a name and a part");
+                continue;
+            }
+            Chant chant = parser.parse(element.getTextContent());
+            if (chant.sectionCount == 0) {
+                errors.add(name + ": Error in chant: the chant has no clef");
+            }
+            for (String message : chant.errorMessages) {
+                errors.add(name + ": " + message.trim());
+            }
+            names.add(name);
+            parts.add(element.getAttribute("part"));
+            chants.add(chant);
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static biagioli.brandon.mobilegraduale.ChantGeometry.STAFF_LINE_HEIGHT;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Exports chants from chants.xml for printing: each chant as an SVG picture, and all of them
+// together as a PDF booklet, with each chant's name above it and its lines running on from page to
+// page. Run it with "gradlew :app:exportChants" (see app/build.gradle).
+//
+// The chants are drawn by the same ChantRenderer, with the same glyphs (see NeumeOutlines), as in
+// the app. The text is set in Helvetica, whose widths are built in (see textWidth), so the chants are
+// laid out for the font that the PDF actually uses.
+//
+// The chants are laid out and drawn in parallel, on a fork-join pool with a thread for each core,
+// each thread taking the next chant in order. Each SVG is written straight to its file as it is
+// drawn. For the booklet, each chant is drawn a line at a time into PDF content, and the pages are
+// written from it in order while the other chants are still being drawn, each page as soon as it
+// is full (see PdfWriter). A chant's content is dropped once it is on its pages, and the threads
+// only get CHANTS_AHEAD chants each ahead of the pages, so the memory needed doesn't grow with
+// the number of chants.
+public class ChantExporter {
+    public enum Page {
+        A4(595, 842), A5(420, 595), LETTER(612, 792); //in points
+
+        protected final int width;
+        protected final int height;
+
+        Page(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    protected static final int DEFAULT_WIDTH = 1600; //the width the chants are laid out at, in units
+    protected static final int MARGIN = 36; //around each page, in points
+    protected static final int TITLE_HEIGHT = 150; //the room for a chant's name above it, in units
+    protected static final int TITLE_SIZE = 70;
+    protected static final int CHANTS_AHEAD = 2; //chants each thread may draw before the booklet has used them
+
+    protected final int width; //in units
+    protected final Page page;
+    protected final float pointsPerUnit;
+
+    public ChantExporter(int width, Page page) {
+        this.width = width;
+        this.page = page;
+        pointsPerUnit = (float) (page.width - 2 * MARGIN) / width;
+    }
+
+    // args: the chants.xml to read, the directory to write to, options, and the chants to export
+    // (by name; a name ending with * stands for every chant starting with the rest of it). With no
+    // chants given, every chant is exported.
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: ChantExporter <chants.xml> <output directory> [-format svg|pdf|both]"
+                    + " [-width units] [-page a4|a5|letter] [-pdf booklet.pdf] [chant names...]");
+            System.exit(2);
+        }
+        File chantsFile = new File(args[0]);
+        File outputDir = new File(args[1]);
+        String format = "both";
+        int width = DEFAULT_WIDTH;
+        Page page = Page.A4;
+        String pdfName = "chants.pdf";
+        List<String> patterns = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-format") && i + 1 < args.length) {
+                format = args[++i];
+            } else if (args[i].equals("-width") && i + 1 < args.length) {
+                width = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-page") && i + 1 < args.length) {
+                page = Page.valueOf(args[++i].toUpperCase());
+            } else if (args[i].equals("-pdf") && i + 1 < args.length) {
+                pdfName = args[++i];
+            } else {
+                patterns.add(args[i]);
+            }
+        }
+
+        List<String> allNames = new ArrayList<>();
+        List<Chant> allChants = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        ChantCompiler.compile(chantsFile, allNames, allChants, errors);
+        if (!errors.isEmpty()) {
+            for (String error : errors) {
+                System.err.println(chantsFile + ": " + error);
+            }
+            System.exit(1);
+        }
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        for (int c = 0; c < allNames.size(); c++) {
+            if (matches(allNames.get(c), patterns)) {
+                names.add(allNames.get(c));
+                chants.add(allChants.get(c));
+            }
+        }
+        if (chants.isEmpty()) {
+            System.err.println("No chants named " + patterns);
+            System.exit(1);
+        }
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+        boolean svg = format.equals("svg") || format.equals("both");
+        boolean pdf = format.equals("pdf") || format.equals("both");
+        long start = System.nanoTime();
+        new ChantExporter(width, page).export(names, chants, svg ? outputDir : null,
+                pdf ? new File(outputDir, pdfName) : null);
+        System.out.println("Exported " + chants.size() + " chants to " + outputDir + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private static boolean matches(String name, List<String> patterns) {
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*") ? name.startsWith(pattern.substring(0, pattern.length() - 1))
+                    : name.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Writes each chant to svgDir as <name>.svg, unless svgDir is null, and all of them to the
+    // booklet pdfFile, unless it's null.
+    public void export(final List<String> names, final List<Chant> chants, final File svgDir, File pdfFile)
+            throws IOException {
+        final int count = chants.size();
+        final ChantLayout[] layouts = new ChantLayout[count];
+        final String[][] lines = (pdfFile == null) ? null : new String[count][];
+        final CountDownLatch[] done = new CountDownLatch[count]; //counted down as each chant is drawn
+        for (int c = 0; c < count; c++) {
+            done[c] = new CountDownLatch(1);
+        }
+        final AtomicInteger next = new AtomicInteger(); //the next chant to be drawn
+        final IOException[] failure = new IOException[1];
+        ForkJoinPool pool = new ForkJoinPool();
+        //a permit for each chant drawn for the booklet that isn't on its pages yet
+        final Semaphore ahead = new Semaphore(CHANTS_AHEAD * pool.getParallelism());
+
+        //each thread takes the next chant, in order, until there are none left
+        class ExportTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                try {
+                    exportChants();
+                } finally {
+                    //if this thread dies, the chants no one has taken are given up, so nothing waits for them
+                    for (int c = next.getAndSet(count); c < count; c++) {
+                        done[c].countDown();
+                    }
+                }
+            }
+
+            private void exportChants() {
+                while (true) {
+                    if (lines != null) {
+                        ahead.acquireUninterruptibly();
+                    }
+                    int c = next.getAndIncrement();
+                    if (c >= count) {
+                        return;
+                    }
+                    try {
+                        Chant chant = chants.get(c);
+                        layouts[c] = layout(chant);
+                        if (svgDir != null) {
+                            writeSvg(chant, layouts[c], names.get(c), new File(svgDir, names.get(c) + ".svg"));
+                        }
+                        if (lines != null) {
+                            lines[c] = drawLines(chant, layouts[c]);
+                        }
+                    } catch (IOException e) {
+                        fail(e);
+                    } catch (RuntimeException e) {
+                        fail(new IOException("Could not export " + names.get(c), e));
+                    } catch (Error e) {
+                        fail(new IOException("Could not export " + names.get(c), e));
+                        throw e;
+                    } finally {
+                        done[c].countDown();
+                    }
+                }
+            }
+
+            //the first failure is the one reported
+            private void fail(IOException e) {
+                synchronized (failure) {
+                    if (failure[0] == null) {
+                        failure[0] = e;
+                    }
+                }
+            }
+        }
+
+        for (int t = 0; t < pool.getParallelism(); t++) {
+            pool.execute(new ExportTask());
+        }
+        IOException bookletFailure = null;
+        try {
+            if (pdfFile != null) {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(pdfFile));
+                try {
+                    writeBooklet(names, layouts, lines, done, ahead, out);
+                } finally {
+                    out.close();
+                }
+            }
+            for (CountDownLatch latch : done) {
+                latch.await();
+            }
+        } catch (IOException e) {
+            bookletFailure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bookletFailure = new InterruptedIOException("Interrupted while exporting");
+        } finally {
+            //if the booklet stopped early, the threads waiting for permits are let go, with nothing left to draw
+            next.set(count);
+            ahead.release(count);
+            pool.shutdown();
+        }
+        try {
+            //shutdown doesn't wait for the threads, which may still be writing the last SVGs
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (bookletFailure == null) {
+                bookletFailure = new InterruptedIOException("Interrupted while exporting");
+            }
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        if (bookletFailure != null) {
+            throw bookletFailure;
+        }
+    }
+
+    // Lays out a chant at this exporter's width, with its text measured in Helvetica.
+    public ChantLayout layout(Chant chant) {
+        int[] textWidths = new int[chant.syllableCount];
+        for (int i = 0; i < chant.syllableCount; i++) {
+            textWidths[i] = (int) textWidth(chant.syllableText[i], 60);
+        }
+        return new ChantLayout(chant, textWidths, width);
+    }
+
+    // Writes a chant as an SVG picture.
+    public void writeSvg(Chant chant, ChantLayout layout, String title, File file) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), Charset.forName("UTF-8"))));
+        try {
+            SvgChantCanvas canvas = new SvgChantCanvas(out);
+            canvas.begin(layout.width, layout.height, pointsPerUnit, titleOf(title));
+            new ChantRenderer(chant).draw(canvas, layout);
+            canvas.end();
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    // Draws each line of a chant as PDF content, with the top of the line at y = 0. The error
+    // messages, if there are any, come first, as a line of their own.
+    protected String[] drawLines(Chant chant, ChantLayout layout) {
+        ChantRenderer renderer = new ChantRenderer(chant);
+        int first = (layout.top > 0) ? 1 : 0;
+        String[] lines = new String[layout.lines.size() + first];
+        StringBuilder content = new StringBuilder(4096);
+        PdfChantCanvas canvas = new PdfChantCanvas(content);
+        if (first > 0) {
+            renderer.drawErrors(canvas);
+            lines[0] = content.toString();
+        }
+        for (int l = 0; l < layout.lines.size(); l++) {
+            content.setLength(0);
+            ChantLayout.StaffLine line = layout.lines.get(l);
+            canvas.translate(0, -line.top);
+            renderer.drawStaffLine(canvas, layout, line);
+            lines[l + first] = content.toString();
+        }
+        return lines;
+    }
+
+    // Puts the lines of the chants on pages, in order, and writes them out as a PDF. Each chant is
+    // waited for (done[c]) as its turn comes, and once its lines are on pages they are dropped, and
+    // its permit is given back to ahead, so that another chant can be drawn.
+    protected void writeBooklet(List<String> names, ChantLayout[] layouts, String[][] lines, CountDownLatch[] done,
+                                Semaphore ahead, OutputStream out) throws IOException, InterruptedException {
+        PdfWriter pdf = new PdfWriter(out);
+        int catalog = pdf.reserve();
+        int pageTree = pdf.reserve();
+        StringBuilder resources = new StringBuilder("<< /Font << ");
+        resources.append("/F1 ").append(pdf.object(
+                "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>")).append(" 0 R ");
+        resources.append("/F2 ").append(pdf.object(
+                "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>")).append(" 0 R ");
+        resources.append(">> /XObject << ");
+        for (int glyph = 0; glyph < ChantCanvas.GLYPH_COUNT; glyph++) {
+            float[] bounds = NeumeOutlines.bounds(glyph);
+            StringBuilder outline = new StringBuilder();
+            NeumeOutlines.outline(glyph, new PdfChantCanvas.PathOperators(outline));
+            outline.append("f\n");
+            StringBuilder dictionary = new StringBuilder("/Type /XObject /Subtype /Form /BBox [");
+            for (float bound : bounds) {
+                appendNumber(dictionary, bound);
+                dictionary.append(' ');
+            }
+            dictionary.append(']');
+            resources.append("/G").append(glyph).append(' ')
+                    .append(pdf.stream(dictionary.toString(), bytes(outline))).append(" 0 R ");
+        }
+        resources.append(">> >>");
+        int resourcesObject = pdf.object(resources.toString());
+
+        //the page is drawn in units, from the top left corner of the margins, with y going down
+        StringBuilder start = new StringBuilder("1 0 0 -1 0 ").append(page.height).append(" cm ");
+        appendNumber(start, pointsPerUnit);
+        start.append(" 0 0 ");
+        appendNumber(start, pointsPerUnit);
+        start.append(' ').append(MARGIN).append(' ').append(MARGIN).append(" cm\n");
+        float pageHeight = (page.height - 2 * MARGIN) / pointsPerUnit;
+
+        List<Integer> pages = new ArrayList<>();
+        StringBuilder content = new StringBuilder(start);
+        float y = 0; //where the next line goes on the page
+        for (int c = 0; c < layouts.length; c++) {
+            done[c].await();
+            if (lines[c] == null) {
+                throw new IOException("Could not draw " + names.get(c));
+            }
+            ChantLayout layout = layouts[c];
+            int first = lines[c].length - layout.lines.size(); //1 if there's a line of error messages
+            //the name goes on the same page as the first line of the chant
+            if (y > 0 && y + TITLE_HEIGHT + lineHeight(layout, first, 0) > pageHeight) {
+                newPage(pdf, pages, pageTree, resourcesObject, content, start);
+                y = 0;
+            }
+            content.append("BT /F2 ").append(TITLE_SIZE).append(" Tf 1 0 0 -1 0 ");
+            appendNumber(content, y + TITLE_SIZE);
+            content.append(" Tm ");
+            appendPdfString(content, titleOf(names.get(c)));
+            content.append(" Tj ET\n");
+            y += TITLE_HEIGHT;
+
+            for (int l = 0; l < lines[c].length; l++) {
+                if (y > 0 && y + lineHeight(layout, first, l) > pageHeight) {
+                    newPage(pdf, pages, pageTree, resourcesObject, content, start);
+                    y = 0;
+                }
+                if (y == 0 && l >= first) {
+                    //notes high above the staff need room at the top of a page
+                    ChantLayout.StaffLine line = layout.lines.get(l - first);
+                    y += Math.max(line.top - line.inkTop, 0);
+                }
+                content.append("q 1 0 0 1 0 ");
+                appendNumber(content, y);
+                content.append(" cm\n").append(lines[c][l]).append("Q\n");
+                y += lineHeight(layout, first, l);
+            }
+            lines[c] = null;
+            layouts[c] = null;
+            ahead.release();
+        }
+        newPage(pdf, pages, pageTree, resourcesObject, content, start);
+
+        StringBuilder tree = new StringBuilder("<< /Type /Pages /Kids [");
+        for (int number : pages) {
+            tree.append(number).append(" 0 R ");
+        }
+        tree.append("] /Count ").append(pages.size()).append(" >>");
+        pdf.object(pageTree, tree.toString());
+        pdf.object(catalog, "<< /Type /Catalog /Pages " + pageTree + " 0 R >>");
+        pdf.finish(catalog);
+    }
+
+    // the height of line l of the lines drawn by drawLines
+    private static int lineHeight(ChantLayout layout, int first, int l) {
+        return (l < first) ? layout.top : STAFF_LINE_HEIGHT;
+    }
+
+    // writes out the page drawn in content, and starts content again for the next page
+    private void newPage(PdfWriter pdf, List<Integer> pages, int pageTree, int resources,
+                         StringBuilder content, CharSequence start) throws IOException {
+        int contents = pdf.stream("", bytes(content));
+        pages.add(pdf.object("<< /Type /Page /Parent " + pageTree + " 0 R /MediaBox [0 0 " + page.width + " "
+                + page.height + "] /Resources " + resources + " 0 R /Contents " + contents + " 0 R >>"));
+        content.setLength(0);
+        content.append(start);
+    }
+
+    private static byte[] bytes(CharSequence content) {
+        return content.toString().getBytes(Charset.forName("ISO-8859-1")); //(all ASCII)
+    }
+
+    // the name of a chant as it's printed: "Introit_Ad_te_levavi" is "Introit Ad te levavi"
+    protected static String titleOf(String name) {
+        return name.replace('_', ' ');
+    }
+
+    // Appends a number, with no more than two decimal places (which is far finer than a printer's
+    // dots, at any scale the chants are drawn at).
+    protected static void appendNumber(StringBuilder out, float value) {
+        long hundredths = Math.round(value * 100.0);
+        if (hundredths < 0) {
+            out.append('-');
+            hundredths = -hundredths;
+        }
+        out.append(hundredths / 100);
+        int fraction = (int) (hundredths % 100);
+        if (fraction != 0) {
+            out.append('.').append(fraction / 10);
+            if (fraction % 10 != 0) {
+                out.append(fraction % 10);
+            }
+        }
+    }
+
+    // The widths of the characters of Helvetica from ' ' to '~', in thousandths of the text size.
+    private static final short[] HELVETICA_WIDTHS = {
+            278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278, // !"#$%&'()*+,-./
+            556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556, //0-9:;<=>?
+            1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778, //@A-O
+            667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556, //P-Z[\]^_
+            333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556, //`a-o
+            556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584}; //p-z{|}~
+
+    // Returns the width of text set in Helvetica at the given size, as it will be in the PDF
+    // (see appendPdfString).
+    public static float textWidth(String text, float size) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            width += charWidth(text.charAt(i));
+        }
+        return width * size / 1000;
+    }
+
+    private static int charWidth(char c) {
+        if (c >= ' ' && c <= '~') {
+            return HELVETICA_WIDTHS[c - ' '];
+        }
+        switch (c) {
+            case '\u00e6': //ae
+                return 889;
+            case '\u00c6':
+            case '\u0152': //OE
+                return 1000;
+            case '\u0153': //oe
+                return 944;
+            case '\u00ec': //i with an accent is wider than i, since it has no dot
+            case '\u00ed':
+            case '\u00ee':
+            case '\u00ef':
+                return 278;
+            default:
+                char base = baseOf(c);
+                return (base >= ' ' && base <= '~') ? HELVETICA_WIDTHS[base - ' '] : 556;
+        }
+    }
+
+    // Appends text as a PDF string in the WinAnsiEncoding of the booklet's fonts. Characters that
+    // the encoding doesn't have are written without their accents, or as '?'.
+    protected static void appendPdfString(StringBuilder out, String text) {
+        out.append('<');
+        for (int i = 0; i < text.length(); i++) {
+            int code = winAnsi(text.charAt(i));
+            out.append(Character.forDigit(code >> 4, 16)).append(Character.forDigit(code & 15, 16));
+        }
+        out.append('>');
+    }
+
+    // the WinAnsiEncoding code of a character
+    private static int winAnsi(char c) {
+        if (c < 0x80 || (c >= 0xa0 && c <= 0xff)) {
+            return c; //ASCII and Latin-1 are the same
+        }
+        switch (c) {
+            case '\u0152': return 0x8c; //OE
+            case '\u0153': return 0x9c; //oe
+            case '\u2020': return 0x86; //dagger
+            case '\u2021': return 0x87;
+            case '\u2018': return 0x91;
+            case '\u2019': return 0x92;
+            case '\u201c': return 0x93;
+            case '\u201d': return 0x94;
+            case '\u2013': return 0x96;
+            case '\u2014': return 0x97;
+            case '\u2026': return 0x85;
+            default:
+                char base = baseOf(c);
+                return (base != c && (base < 0x80 || (base >= 0xa0 && base <= 0xff))) ? base : '?';
+        }
+    }
+
+    // a character without its accents, such as the ae of an ae with an accent
+    private static char baseOf(char c) {
+        return Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+    }
+}
@@ -0,0 +1,386 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import biagioli.brandon.mobilegraduale.Chant.Clef;
+import biagioli.brandon.mobilegraduale.Chant.Mode;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Reads and writes the compiled form of chants (chants.bin, made by ChantCompiler at build time).
+// A compiled chant has already been parsed, and all of its note flags, offsets and episema heights
+// are worked out, so loading it is just a matter of reading the arrays of the Chant.
+//
+// The file is read in place, from a ByteBuffer (which the app maps straight from its assets; see
+// ChantLoader), and nothing is read until it is asked for: opening the file reads a few bytes of
+// header, however many chants there are, and reading a chant reads its index entry and its body,
+// and nothing else. A chant's ID is its place in the file, which is its place in chants.xml (and in
+// ChantIndex and MelodyIndex, which are made from the same list).
+//
+//   int MAGIC, short VERSION, int chant count,
+//   byte part count, for each part: UTF name (introit, gradual, and so on),
+//   for each chant, an entry of ENTRY_SIZE bytes: int where its name is, int where its body is,
+//   int the length of its body, byte part, byte mode (-1 if there isn't one), short 0
+//   then the ID of each chant in the order of their names (for find), as ints,
+//   then the names (each a UTF, the name it has in chants.xml), and then the bodies.
+// Every position is from the start of the file. Each body is the arrays of the Chant, one after
+// the other:
+//   byte mode (-1 if there isn't one), byte section count,
+//   for each section: byte clef, byte clef line, int first syllable,
+//   int syllable count, for each syllable: UTF text, byte syllable bits, short note width, int first note,
+//   int note count, then the value of each note (a byte, in half steps, since every note value is a
+//   multiple of 0.5), the flags of each note (an int), the offset of each note (a byte), and the
+//   episema height of each note (a short)
+//
+// A ChantFile never changes the position of its buffer, so it can be read from any thread.
+public final class ChantFile {
+    public static final String ASSET_NAME = "chants.bin";
+
+    private static final int MAGIC = 0x4D474348; // "MGCH"
+    private static final short VERSION = 3;
+    private static final int ENTRY_SIZE = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final String[] parts;
+    private final int entries; //where the first entry is
+    private final int byName; //where the IDs in the order of their names are
+
+    private ChantFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < 11 || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            throw new IOException("Not a compiled chant file, or compiled by a different version");
+        }
+        count = buffer.getInt(6);
+        parts = new String[buffer.get(10)];
+        int position = 11;
+        for (int p = 0; p < parts.length; p++) {
+            parts[p] = utf(position);
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+        }
+        entries = position;
+        byName = entries + count * ENTRY_SIZE;
+    }
+
+    // Returns the chants in buffer, which holds a whole chants.bin (from position 0 to its capacity).
+    public static ChantFile open(ByteBuffer buffer) throws IOException {
+        return new ChantFile(buffer);
+    }
+
+    // Returns a ChantFile with no chants in it, for when there isn't one to open.
+    public static ChantFile empty() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(out, Collections.<String>emptyList(), Collections.<String>emptyList(),
+                    Collections.<Chant>emptyList());
+            return open(ByteBuffer.wrap(out.toByteArray()));
+        } catch (IOException e) {
+            throw new AssertionError(e); //nothing can go wrong writing to memory
+        }
+    }
+
+    // Writes the chants, with their names and parts, to out.
+    public static void write(OutputStream out, List<String> names, List<String> parts, List<Chant> chants)
+            throws IOException {
+        ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+        Writer writer = new Writer(bodies);
+        for (int c = 0; c < chants.size(); c++) {
+            writer.add(names.get(c), parts.get(c), chants.get(c));
+        }
+        writer.writeIndex(out);
+        bodies.writeTo(out);
+        out.flush();
+    }
+
+    // Writes a file one chant at a time, for when there are too many chants to keep in memory at
+    // once (see GabcImporter). The body of each chant goes straight to the stream given, and only
+    // its name, its part and where its body is are kept. Once every chant is added, writeIndex()
+    // writes everything that comes before the bodies, and the bodies are copied in after it.
+    public static class Writer {
+        private final DataOutputStream bodies;
+        private final List<String> names = new ArrayList<>();
+        private final List<String> partNames = new ArrayList<>();
+        private int[] entries = new int[3 * 64]; //for each chant: where its body is, its length, part << 8 | mode
+
+        public Writer(OutputStream bodies) {
+            this.bodies = new DataOutputStream(bodies);
+        }
+
+        public int chantCount() {
+            return names.size();
+        }
+
+        // Writes a chant's body, and returns its ID.
+        public int add(String name, String part, Chant chant) throws IOException {
+            int id = names.size();
+            int partIndex = partNames.indexOf(part);
+            if (partIndex < 0) {
+                partIndex = partNames.size();
+                partNames.add(part);
+            }
+            if (3 * id == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            int offset = bodies.size();
+            writeChant(bodies, chant);
+            entries[3 * id] = offset;
+            entries[3 * id + 1] = bodies.size() - offset;
+            entries[3 * id + 2] = (partIndex << 8) | ((chant.mode == null ? -1 : chant.mode.ordinal()) & 0xFF);
+            names.add(name);
+            return id;
+        }
+
+        // Writes the header, the entries and the names of the chants added so far, which come
+        // before their bodies.
+        public void writeIndex(OutputStream out) throws IOException {
+            int count = names.size();
+            Integer[] byName = new Integer[count];
+            for (int c = 0; c < count; c++) {
+                byName[c] = c;
+            }
+            Arrays.sort(byName, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return names.get(a).compareTo(names.get(b));
+                }
+            });
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerData = new DataOutputStream(header);
+            headerData.writeInt(MAGIC);
+            headerData.writeShort(VERSION);
+            headerData.writeInt(count);
+            headerData.writeByte(partNames.size());
+            for (String part : partNames) {
+                headerData.writeUTF(part);
+            }
+            int namesStart = headerData.size() + count * (ENTRY_SIZE + 4);
+
+            ByteArrayOutputStream nameTable = new ByteArrayOutputStream();
+            DataOutputStream nameData = new DataOutputStream(nameTable);
+            int[] nameOffsets = new int[count];
+            for (int c = 0; c < count; c++) {
+                nameOffsets[c] = namesStart + nameData.size();
+                nameData.writeUTF(names.get(c));
+            }
+            int bodiesStart = namesStart + nameData.size();
+
+            for (int c = 0; c < count; c++) {
+                headerData.writeInt(nameOffsets[c]);
+                headerData.writeInt(bodiesStart + entries[3 * c]);
+                headerData.writeInt(entries[3 * c + 1]);
+                headerData.writeByte(entries[3 * c + 2] >> 8);
+                headerData.writeByte(entries[3 * c + 2]);
+                headerData.writeShort(0);
+            }
+            for (int id : byName) {
+                headerData.writeInt(id);
+            }
+            header.writeTo(out);
+            nameTable.writeTo(out);
+        }
+    }
+
+    public int chantCount() {
+        return count;
+    }
+
+    // whether there is a chant with the given ID
+    public boolean contains(int id) {
+        return id >= 0 && id < count;
+    }
+
+    public String name(int id) {
+        return utf(buffer.getInt(entry(id)));
+    }
+
+    // Returns the part of the Mass that a chant is (introit, gradual, and so on), as in chants.xml.
+    public String part(int id) {
+        return parts[buffer.get(entry(id) + 12)];
+    }
+
+    // Returns the mode of a chant, or null if it doesn't have one, without reading the chant.
+    public Mode mode(int id) {
+        int mode = buffer.get(entry(id) + 13);
+        return (mode < 0) ? null : Mode.values()[mode];
+    }
+
+    // Returns the ID of the chant with the given name, or -1 if there isn't one. The names are
+    // searched in order, so this only reads a few of them.
+    public int find(String name) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = buffer.getInt(byName + middle * 4);
+            int comparison = name(id).compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // Reads the chant with the given ID.
+    public Chant read(int id) throws IOException {
+        int entry = entry(id);
+        ByteBuffer body = buffer.duplicate();
+        int start = buffer.getInt(entry + 4);
+        body.limit(start + buffer.getInt(entry + 8));
+        body.position(start);
+        return readChant(new DataInputStream(new BufferInputStream(body)));
+    }
+
+    // Returns a hash of a chant's compiled form, which changes whenever anything about the chant
+    // does (see TileCache). It's a 64-bit FNV-1a hash, which is plenty to tell chants apart.
+    public long contentHash(int id) {
+        int entry = entry(id);
+        int start = buffer.getInt(entry + 4);
+        int end = start + buffer.getInt(entry + 8);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private int entry(int id) {
+        if (!contains(id)) {
+            throw new IndexOutOfBoundsException("No chant " + id + " of " + count);
+        }
+        return entries + id * ENTRY_SIZE;
+    }
+
+    // reads a UTF written by DataOutputStream.writeUTF; every name and part is plain ASCII
+    private String utf(int position) {
+        byte[] bytes = new byte[buffer.getShort(position) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    // Reads what's left of a ByteBuffer (its own, duplicated one) as a stream.
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+
+    private static void writeChant(DataOutputStream data, Chant chant) throws IOException {
+        data.writeByte(chant.mode == null ? -1 : chant.mode.ordinal());
+        if (chant.sectionCount > 255) {
+            throw new IOException("A chant can't have more than 255 clefs, not " + chant.sectionCount);
+        }
+        data.writeByte(chant.sectionCount);
+        for (int s = 0; s < chant.sectionCount; s++) {
+            data.writeByte(chant.sectionClef[s].ordinal());
+            data.writeByte(chant.sectionClefLine[s]);
+            data.writeInt(chant.sectionStart[s]);
+        }
+        data.writeInt(chant.syllableCount);
+        for (int i = 0; i < chant.syllableCount; i++) {
+            data.writeUTF(chant.syllableText[i]);
+            data.writeByte(chant.syllableBits[i]);
+            data.writeShort(chant.syllableNoteWidth[i]);
+            data.writeInt(chant.syllableNoteStart[i]);
+        }
+        data.writeInt(chant.noteCount);
+        for (int n = 0; n < chant.noteCount; n++) {
+            data.writeByte((int) (chant.noteValue[n] * 2));
+        }
+        for (int n = 0; n < chant.noteCount; n++) {
+            data.writeInt(chant.noteFlags[n]);
+        }
+        for (int n = 0; n < chant.noteCount; n++) {
+            data.writeByte(chant.noteOffset[n]);
+        }
+        for (int n = 0; n < chant.noteCount; n++) {
+            data.writeShort(chant.noteEpisemaHeight[n]);
+        }
+    }
+
+    private static Chant readChant(DataInputStream data) throws IOException {
+        Chant chant = new Chant();
+        int mode = data.readByte();
+        chant.mode = mode < 0 ? null : Mode.values()[mode];
+
+        chant.sectionCount = data.readUnsignedByte();
+        chant.sectionClef = new Clef[chant.sectionCount];
+        chant.sectionClefLine = new int[chant.sectionCount];
+        chant.sectionStart = new int[chant.sectionCount + 1];
+        for (int s = 0; s < chant.sectionCount; s++) {
+            chant.sectionClef[s] = Clef.values()[data.readByte()];
+            chant.sectionClefLine[s] = data.readByte();
+            chant.sectionStart[s] = data.readInt();
+        }
+
+        chant.syllableCount = data.readInt();
+        chant.syllableText = new String[chant.syllableCount];
+        chant.syllableBits = new int[chant.syllableCount];
+        chant.syllableNoteWidth = new int[chant.syllableCount];
+        chant.syllableNoteStart = new int[chant.syllableCount + 1];
+        for (int i = 0; i < chant.syllableCount; i++) {
+            chant.syllableText[i] = data.readUTF();
+            chant.syllableBits[i] = data.readByte();
+            chant.syllableNoteWidth[i] = data.readShort();
+            chant.syllableNoteStart[i] = data.readInt();
+        }
+        chant.sectionStart[chant.sectionCount] = chant.syllableCount;
+
+        chant.noteCount = data.readInt();
+        chant.syllableNoteStart[chant.syllableCount] = chant.noteCount;
+        chant.noteValue = new float[chant.noteCount];
+        chant.noteFlags = new int[chant.noteCount];
+        chant.noteOffset = new short[chant.noteCount];
+        chant.noteEpisemaHeight = new short[chant.noteCount];
+        for (int n = 0; n < chant.noteCount; n++) {
+            chant.noteValue[n] = data.readByte() / 2f;
+        }
+        for (int n = 0; n < chant.noteCount; n++) {
+            chant.noteFlags[n] = data.readInt();
+        }
+        for (int n = 0; n < chant.noteCount; n++) {
+            chant.noteOffset[n] = data.readByte();
+        }
+        for (int n = 0; n < chant.noteCount; n++) {
+            chant.noteEpisemaHeight[n] = data.readShort();
+        }
+        return chant;
+    }
+}
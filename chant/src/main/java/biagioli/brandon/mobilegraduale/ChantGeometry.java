@@ -0,0 +1,29 @@
+package biagioli.brandon.mobilegraduale;
+
+/**
+ * Created by Brandon on 4/11/2016.
+ */
+// The constants used for laying out and drawing a chant. They used to live in GregorianChantView,
+// but the parser needs some of them (note offsets and episema heights are worked out while parsing),
+// and the parser doesn't know anything about Views.
+public final class ChantGeometry {
+    public static final float SQRT_TWO = (float)Math.sqrt(2);//a useful number for geometry
+
+    public static final int STAFF_START_X = 10; //top-right corner of the first staff lines
+    public static final int STAFF_START_Y = 70; //top-right corner of the first staff lines
+    public static final int STAFF_END_MARGIN = 5; //the margin after the staff lines on the right
+    public static final int STAFF_SPACE = 48; //the space between horizontal lines in the staff
+    public static final int STAFF_LINE_HEIGHT = 400; //the height of each line of the chant, including the text
+    public static final int ERROR_LINE_HEIGHT = 50; //the height of each error message above the chant
+    public static final int CLEF_START_X = 20; //where the clef goes at the start of each line
+
+    public static final int BASE_NOTE_OFFSET = 20; //constants used for getting the spacing of notes/words right
+    public static final int TEXT_START_OFFSET = 40; //generally, these are the offsets used AFTER an item before drawing the next
+    public static final int SYLLABLE_OFFSET = 25;
+    public static final int WORD_OFFSET = 45;
+    public static final int CLEF_OFFSET = 80;
+    public static final int BASE_EPISEMA_HEIGHT = STAFF_SPACE/4-3;
+
+    private ChantGeometry() {
+    }
+}
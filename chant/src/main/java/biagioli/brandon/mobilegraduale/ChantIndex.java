@@ -0,0 +1,332 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// A full-text index of the words of every chant, for finding a chant by its incipit or by any phrase
+// in it. The words are put back together from the syllables, and normalized (see normalize), so
+// that a syllabified word with accents and punctuation, like "Do-mi-ne," with an accent on the
+// first o, is found by typing "domine".
+//
+// Every distinct word is a term, and the terms are numbered in alphabetical order, so the terms
+// starting with some prefix always have consecutive numbers. Each chant is kept as the list of its
+// words' term numbers (which is enough to check a phrase), and each term has a list of the places
+// it's found (which chant, and which word of it), so finding a word doesn't mean looking at every chant.
+//
+// The index is made by ChantCompiler along with chants.bin, and saved as search.bin:
+//   int MAGIC, short VERSION, int chant count,
+//   for each chant: UTF name, UTF incipit,
+//   int term count, each term as a UTF,
+//   for each chant: int word count, and the term number of each word (an int)
+// The lists of places are worked out again when the index is read.
+public class ChantIndex {
+    public static final String ASSET_NAME = "search.bin";
+    protected static final int INCIPIT_WORDS = 4; //how many words of a chant its incipit has
+
+    private static final int MAGIC = 0x4D47494E; // "MGIN"
+    private static final short VERSION = 1;
+
+    protected final String[] names; //the name of each chant (its <chant> in chants.xml)
+    protected final String[] incipits; //the first few words of each chant, as written
+    protected final String[] terms; //every distinct word, normalized, in alphabetical order
+    protected final int[] wordStart; //where each chant's words start in words; one more entry than chants
+    protected final int[] words; //the term number of each word of each chant
+    protected final int[] placeStart; //where each term's places start in placeChant; one more entry than terms
+    protected final int[] placeChant; //each place that each term is found: the chant,
+    protected final int[] placeWord; //and which of its words
+
+    protected ChantIndex(String[] names, String[] incipits, String[] terms, int[] wordStart, int[] words) {
+        this.names = names;
+        this.incipits = incipits;
+        this.terms = terms;
+        this.wordStart = wordStart;
+        this.words = words;
+
+        //count each term's places, and then fill them in, in order of chant and word
+        placeStart = new int[terms.length + 1];
+        for (int word : words) {
+            placeStart[word + 1]++;
+        }
+        for (int t = 0; t < terms.length; t++) {
+            placeStart[t + 1] += placeStart[t];
+        }
+        placeChant = new int[words.length];
+        placeWord = new int[words.length];
+        int[] next = Arrays.copyOf(placeStart, terms.length);
+        for (int c = 0; c < names.length; c++) {
+            for (int w = wordStart[c]; w < wordStart[c + 1]; w++) {
+                int place = next[words[w]]++;
+                placeChant[place] = c;
+                placeWord[place] = w - wordStart[c];
+            }
+        }
+    }
+
+    // Makes the index of the given chants, which have the given names.
+    public static ChantIndex build(List<String> names, List<Chant> chants) {
+        List<List<String>> chantWords = new ArrayList<>();
+        String[] incipits = new String[chants.size()];
+        TreeSet<String> termSet = new TreeSet<>();
+        for (int c = 0; c < chants.size(); c++) {
+            Chant chant = chants.get(c);
+            List<String> normalized = new ArrayList<>();
+            StringBuilder incipit = new StringBuilder();
+            StringBuilder word = new StringBuilder();
+            for (int i = 0; i < chant.syllableCount; i++) {
+                //a bar line, or a syllable of a melisma with no letters of its own, can come in the
+                //middle of a word, so it doesn't end the word
+                boolean letters = !chant.isBar(i) && normalize(chant.syllableText[i]).length() > 0;
+                if (letters) {
+                    word.append(chant.syllableText[i]);
+                }
+                boolean wordEnd = letters && (chant.syllableBits[i] & Chant.WORD_END) != 0;
+                if (!wordEnd && i + 1 < chant.syllableCount) {
+                    continue;
+                }
+                String term = normalize(word);
+                if (term.length() > 0) {
+                    //bar lines, asterisks and the like aren't words
+                    normalized.add(term);
+                    termSet.add(term);
+                    if (normalized.size() <= INCIPIT_WORDS) {
+                        appendWord(incipit, word);
+                    }
+                }
+                word.setLength(0);
+            }
+            chantWords.add(normalized);
+            incipits[c] = incipit.toString();
+        }
+
+        String[] terms = termSet.toArray(new String[termSet.size()]);
+        Map<String, Integer> termNumbers = new HashMap<>();
+        for (int t = 0; t < terms.length; t++) {
+            termNumbers.put(terms[t], t);
+        }
+        int[] wordStart = new int[chants.size() + 1];
+        for (int c = 0; c < chants.size(); c++) {
+            wordStart[c + 1] = wordStart[c] + chantWords.get(c).size();
+        }
+        int[] words = new int[wordStart[chants.size()]];
+        for (int c = 0; c < chants.size(); c++) {
+            List<String> normalized = chantWords.get(c);
+            for (int w = 0; w < normalized.size(); w++) {
+                words[wordStart[c] + w] = termNumbers.get(normalized.get(w));
+            }
+        }
+        return new ChantIndex(names.toArray(new String[names.size()]), incipits, terms, wordStart, words);
+    }
+
+    // Returns a word as it's kept in the index: in lower case, without accents, and with only its
+    // letters and digits (so no hyphens, punctuation or spaces). Ligatures such as "ae" are spelled out.
+    public static String normalize(CharSequence word) {
+        String decomposed = Normalizer.normalize(word, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = Character.toLowerCase(decomposed.charAt(i));
+            if (c == '\u00e6') { //ae
+                normalized.append("ae");
+            } else if (c == '\u0153') { //oe
+                normalized.append("oe");
+            } else if (Character.isLetterOrDigit(c)) {
+                normalized.append(c); //accents were split off by the normalization, and are dropped here
+            }
+        }
+        return normalized.toString();
+    }
+
+    // adds a word to an incipit, without the hyphens and markings between its syllables
+    private static void appendWord(StringBuilder incipit, CharSequence word) {
+        if (incipit.length() > 0) {
+            incipit.append(' ');
+        }
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c != '-' && c != '*' && c != ' ' && c != '_') {
+                incipit.append(c);
+            }
+        }
+    }
+
+    public int chantCount() {
+        return names.length;
+    }
+
+    public String name(int chant) {
+        return names[chant];
+    }
+
+    public String incipit(int chant) {
+        return incipits[chant];
+    }
+
+    // Returns the chants (by their number in the index) that contain the words of query, one after
+    // the other. The last word of the query can be the start of a word, unless the query ends with
+    // a space, so that results can be shown while the query is being typed. Chants that start with
+    // the query come first; otherwise chants are in the order they were indexed. An empty query
+    // returns every chant.
+    public int[] search(String query) {
+        String[] tokens = query.trim().split("\\s+");
+        int tokenCount = 0;
+        for (String token : tokens) {
+            tokens[tokenCount] = normalize(token);
+            if (tokens[tokenCount].length() > 0) {
+                tokenCount++;
+            }
+        }
+        if (tokenCount == 0) {
+            int[] all = new int[names.length];
+            for (int c = 0; c < all.length; c++) {
+                all[c] = c;
+            }
+            return all;
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        //the range of term numbers that each token matches
+        int[] low = new int[tokenCount];
+        int[] high = new int[tokenCount];
+        int rarest = 0; //the token found in the fewest places
+        for (int k = 0; k < tokenCount; k++) {
+            low[k] = lowerBound(tokens[k]);
+            if (k == tokenCount - 1 && lastIsPrefix) {
+                high[k] = lowerBound(tokens[k] + Character.MAX_VALUE);
+            } else {
+                high[k] = (low[k] < terms.length && terms[low[k]].equals(tokens[k])) ? low[k] + 1 : low[k];
+            }
+            if (low[k] == high[k]) {
+                return new int[0]; //some word isn't in any chant
+            }
+            if (places(low[k], high[k]) < places(low[rarest], high[rarest])) {
+                rarest = k;
+            }
+        }
+
+        //check each place where the rarest token is found for the rest of the phrase around it
+        boolean[] found = new boolean[names.length];
+        boolean[] starts = new boolean[names.length];
+        int foundCount = 0;
+        for (int place = placeStart[low[rarest]]; place < placeStart[high[rarest]]; place++) {
+            int chant = placeChant[place];
+            int first = placeWord[place] - rarest; //where the phrase would start
+            if (found[chant] && (starts[chant] || first != 0)) {
+                continue;
+            }
+            if (first < 0 || wordStart[chant] + first + tokenCount > wordStart[chant + 1]) {
+                continue;
+            }
+            boolean matches = true;
+            for (int k = 0; k < tokenCount && matches; k++) {
+                int term = words[wordStart[chant] + first + k];
+                matches = term >= low[k] && term < high[k];
+            }
+            if (matches) {
+                foundCount += found[chant] ? 0 : 1;
+                found[chant] = true;
+                starts[chant] |= first == 0;
+            }
+        }
+
+        int[] results = new int[foundCount];
+        int r = 0;
+        for (int c = 0; c < names.length; c++) {
+            if (starts[c]) {
+                results[r++] = c;
+            }
+        }
+        for (int c = 0; c < names.length; c++) {
+            if (found[c] && !starts[c]) {
+                results[r++] = c;
+            }
+        }
+        return results;
+    }
+
+    // the number of places that the terms from low to high are found
+    private int places(int low, int high) {
+        return placeStart[high] - placeStart[low];
+    }
+
+    // the number of the first term that isn't alphabetically before term
+    private int lowerBound(String term) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (terms[middle].compareTo(term) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Writes the index to out, as search.bin.
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(names.length);
+        for (int c = 0; c < names.length; c++) {
+            data.writeUTF(names[c]);
+            data.writeUTF(incipits[c]);
+        }
+        data.writeInt(terms.length);
+        for (String term : terms) {
+            data.writeUTF(term);
+        }
+        for (int c = 0; c < names.length; c++) {
+            data.writeInt(wordStart[c + 1] - wordStart[c]);
+            for (int w = wordStart[c]; w < wordStart[c + 1]; w++) {
+                data.writeInt(words[w]);
+            }
+        }
+        data.flush();
+    }
+
+    // Reads an index written by write().
+    public static ChantIndex read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readShort() != VERSION) {
+            throw new IOException("Not a chant index, or made by a different version");
+        }
+        int chantCount = data.readInt();
+        String[] names = new String[chantCount];
+        String[] incipits = new String[chantCount];
+        for (int c = 0; c < chantCount; c++) {
+            names[c] = data.readUTF();
+            incipits[c] = data.readUTF();
+        }
+        String[] terms = new String[data.readInt()];
+        for (int t = 0; t < terms.length; t++) {
+            terms[t] = data.readUTF();
+        }
+        int[] wordStart = new int[chantCount + 1];
+        int[] words = new int[0];
+        for (int c = 0; c < chantCount; c++) {
+            int count = data.readInt();
+            wordStart[c + 1] = wordStart[c] + count;
+            if (wordStart[c + 1] > words.length) {
+                words = Arrays.copyOf(words, Math.max(wordStart[c + 1], words.length * 2));
+            }
+            for (int w = wordStart[c]; w < wordStart[c + 1]; w++) {
+                words[w] = data.readInt();
+            }
+        }
+        return new ChantIndex(names, incipits, terms, wordStart, Arrays.copyOf(words, wordStart[chantCount]));
+    }
+}
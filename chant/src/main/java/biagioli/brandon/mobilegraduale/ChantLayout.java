@@ -0,0 +1,313 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// The layout of a chant at a particular width: where the lines break, and where everything on each
+// line goes. Working this out ahead of time means that the View knows its height when it is measured,
+// and only has to paint when it is drawn. A ChantLayout never changes once it is made; if the width
+// changes, a new one is made.
+//
+// The lines are broken the way a typesetter would break a paragraph: rather than filling each line
+// as full as it will go, the breaks are chosen together, so that the lines are about as full as
+// each other, and break after bar lines and at the ends of words where they can (see breakLines).
+// Each line but the last is then justified, spreading its leftover space between its syllables.
+public class ChantLayout {
+    protected final int width;
+    protected final int height;
+    protected final int top; //the top of the first staff line; the error messages go above it
+    protected final List<StaffLine> lines;
+
+    // One line of the chant: a staff, with the clefs and syllables drawn on it, and (unless it's the
+    // last line) a custos at the end showing the first note of the next line.
+    public static class StaffLine {
+        protected final int top; //the y value of the top of this line
+        protected final int[] syllables; //the syllables on this line (their indexes in the Chant)
+        protected final int[] syllableX; //the x value of each syllable
+        protected final int[] syllableSection; //the section (and so the clef) of each syllable
+        protected final int[] clefX; //the x value of each clef; usually a line has just one, at the start
+        protected final int[] clefSection;
+        protected final int[] clefIndex; //the number of syllables drawn before each clef
+        protected final int custos; //the note shown by the custos; -1 if this line doesn't need a custos
+        protected final int inkTop; //the highest and lowest points that anything on this line is
+        protected final int inkBottom; //drawn at; usually the top and bottom of the line
+
+        protected StaffLine(Chant chant, int top, int[] syllables, int[] syllableX, int[] syllableSection,
+                            int[] clefX, int[] clefSection, int[] clefIndex, int custos) {
+            this.top = top;
+            this.syllables = syllables;
+            this.syllableX = syllableX;
+            this.syllableSection = syllableSection;
+            this.clefX = clefX;
+            this.clefSection = clefSection;
+            this.clefIndex = clefIndex;
+            this.custos = custos;
+
+            //notes that are high above or far below the staff stick out of the line
+            float highest = 4;
+            float lowest = 1;
+            for (int syllable : syllables) {
+                for (int n = chant.syllableNoteStart[syllable]; n < chant.syllableNoteStart[syllable + 1]; n++) {
+                    highest = (chant.noteValue[n] > highest) ? chant.noteValue[n] : highest;
+                    lowest = (chant.noteValue[n] < lowest) ? chant.noteValue[n] : lowest;
+                }
+            }
+            int inkTop = top + noteY(highest) - INK_MARGIN;
+            int inkBottom = top + noteY(lowest) + INK_MARGIN;
+            this.inkTop = (inkTop < top) ? inkTop : top;
+            this.inkBottom = (inkBottom > top + ChantGeometry.STAFF_LINE_HEIGHT) ?
+                    inkBottom : top + ChantGeometry.STAFF_LINE_HEIGHT;
+        }
+    }
+
+    //room above and below a note for its episemas, dots and stems
+    private static final int INK_MARGIN = 2 * ChantGeometry.STAFF_SPACE;
+
+    //the cost of breaking a line at the end of a word, and in the middle of one (or just before a
+    //bar line), compared to the cost of leftover space (the square of its width); breaking after a
+    //bar line costs nothing
+    private static final long WORD_BREAK_COST = 40 * 40;
+    private static final long HYPHEN_BREAK_COST = 250 * 250;
+    //the most extra space that justifying a line can add between two syllables
+    private static final int MAX_STRETCH = 2 * ChantGeometry.WORD_OFFSET;
+
+    // the y value of a note with the given value, relative to the top of its line
+    protected static int noteY(float value) {
+        return (int) (ChantGeometry.STAFF_START_Y + ChantGeometry.STAFF_SPACE * (4 - value));
+    }
+
+    // textWidths holds the width of the text of each syllable of the chant. Each syllable is as
+    // wide as its notes or its text, whichever is wider.
+    public ChantLayout(Chant chant, int[] textWidths, int width) {
+        this.width = width;
+        top = chant.errorMessages.size() * ChantGeometry.ERROR_LINE_HEIGHT;
+
+        int count = chant.syllableCount;
+        int[] syllableWidth = new int[count];
+        for (int i = 0; i < count; i++) {
+            syllableWidth[i] = (textWidths[i] > chant.syllableNoteWidth[i]) ? textWidths[i] : chant.syllableNoteWidth[i];
+        }
+        int[] clefsAt = new int[count + 1]; //the number of sections that start at each syllable
+        for (int s = 0; s < chant.sectionCount; s++) {
+            clefsAt[chant.sectionStart[s]]++;
+        }
+        int[] breaks = breakLines(chant, syllableWidth, clefsAt, width);
+
+        List<StaffLine> lines = new ArrayList<>();
+        int limit = width - ChantGeometry.WORD_OFFSET;
+        int section = 0; //the section of the syllable being laid out
+        int nextSection = 0; //the next section whose clef hasn't been laid out
+        for (int l = 0; l + 1 < breaks.length; l++) {
+            int first = breaks[l];
+            int end = breaks[l + 1];
+            boolean last = end == count;
+            LineBuilder line = new LineBuilder(top + l * ChantGeometry.STAFF_LINE_HEIGHT);
+            int xOffset = ChantGeometry.CLEF_START_X;
+
+            //every line starts with the clef of its first syllable's section (sections with no
+            //syllables, just before it, are skipped)
+            if (first < count) {
+                while (nextSection < chant.sectionCount && chant.sectionStart[nextSection + 1] <= first) {
+                    nextSection++;
+                }
+                if (nextSection < chant.sectionCount && chant.sectionStart[nextSection] <= first) {
+                    section = nextSection++;
+                }
+                line.addClef(xOffset, section);
+                xOffset += ChantGeometry.CLEF_OFFSET;
+            }
+
+            //spread the leftover space between the syllables, unless this is the last line
+            int stretch = 0;
+            int stretchRemainder = 0;
+            if (!last && end - first > 1) {
+                int slack = limit - naturalEnd(syllableWidth, clefsAt, chant, first, end - 1);
+                stretch = slack / (end - first - 1);
+                stretchRemainder = slack % (end - first - 1);
+                if (stretch >= MAX_STRETCH) {
+                    stretch = MAX_STRETCH;
+                    stretchRemainder = 0;
+                }
+            }
+
+            for (int i = first; i < end; i++) {
+                //a new section in the middle of a line starts with a clef
+                while (nextSection < chant.sectionCount && chant.sectionStart[nextSection] == i) {
+                    line.addClef(xOffset, nextSection);
+                    xOffset += ChantGeometry.CLEF_OFFSET;
+                    section = nextSection++;
+                }
+                line.addSyllable(i, xOffset, section);
+                xOffset += syllableWidth[i] + gapAfter(chant, i);
+                if (i - first < stretchRemainder) {
+                    xOffset += stretch + 1;
+                } else {
+                    xOffset += stretch;
+                }
+            }
+            if (last) {
+                //any sections after the last syllable are just clefs
+                while (nextSection < chant.sectionCount) {
+                    line.addClef(xOffset, nextSection++);
+                    xOffset += ChantGeometry.CLEF_OFFSET;
+                }
+            }
+            // a custos is a half-drawn note at the end of a line,
+            //indicating what the first note of the next line will be
+            lines.add(line.build(chant, (!last && chant.hasNotes(end)) ? chant.syllableNoteStart[end] : -1));
+        }
+
+        this.lines = Collections.unmodifiableList(lines);
+        height = top + lines.size() * ChantGeometry.STAFF_LINE_HEIGHT;
+    }
+
+    // Chooses where the lines break, returning the first syllable of each line followed by the
+    // number of syllables (or just {0} if there are no syllables at all).
+    //
+    // Every way of breaking the chant is given a cost: each line but the last costs the square of
+    // the space left over at its end (so one very short line costs more than two slightly short
+    // ones), plus a cost for where it breaks (see WORD_BREAK_COST). The last line only costs
+    // anything if it is less than half full, so that a chant doesn't end with a syllable or two on
+    // a line of their own. cost[e] is the least that the syllables before e can cost, if a line
+    // ends just before e; it's worked out from the cost of each place the last of those lines
+    // could start. Only lines that fit are tried, so this takes time proportional to the number of
+    // syllables times the number on a line.
+    protected static int[] breakLines(Chant chant, int[] syllableWidth, int[] clefsAt, int width) {
+        int count = chant.syllableCount;
+        if (count == 0) {
+            return new int[]{0, 0};
+        }
+        int limit = width - ChantGeometry.WORD_OFFSET;
+        int lineStart = ChantGeometry.CLEF_START_X + ChantGeometry.CLEF_OFFSET; //where the first syllable goes
+        int room = limit - lineStart;
+
+        long[] cost = new long[count + 1];
+        int[] start = new int[count + 1]; //where the cheapest last line before e starts
+        for (int e = 1; e <= count; e++) {
+            cost[e] = Long.MAX_VALUE;
+            long breakCost = (e < count) ? breakCost(chant, e - 1) : 0;
+            //try each start for the line ending with syllable e - 1, working backwards from it and
+            //adding each syllable (and the clefs after it) to the line's width along the way
+            int lineEnd = lineStart + syllableWidth[e - 1];
+            for (int s = e - 1; s >= 0; s--) {
+                if (s < e - 1) {
+                    lineEnd += syllableWidth[s] + gapAfter(chant, s) + clefsAt[s + 1] * ChantGeometry.CLEF_OFFSET;
+                    if (lineEnd > limit) {
+                        break; //starting any earlier won't fit either
+                    }
+                }
+                //(one syllable too wide for a line goes on a line anyway)
+                long slack = (lineEnd < limit) ? limit - lineEnd : 0;
+                long lineCost;
+                if (e == count) {
+                    long shortfall = slack - room / 2;
+                    lineCost = (shortfall > 0) ? shortfall * shortfall : 0;
+                } else {
+                    lineCost = slack * slack + breakCost;
+                }
+                if (cost[s] + lineCost < cost[e]) {
+                    cost[e] = cost[s] + lineCost;
+                    start[e] = s;
+                }
+            }
+        }
+
+        int lineCount = 0;
+        for (int e = count; e > 0; e = start[e]) {
+            lineCount++;
+        }
+        int[] breaks = new int[lineCount + 1];
+        for (int e = count, l = lineCount; l >= 0; e = start[e], l--) {
+            breaks[l] = e;
+        }
+        return breaks;
+    }
+
+    // the cost of a line ending with the given syllable
+    private static long breakCost(Chant chant, int syllable) {
+        if (syllable + 1 < chant.syllableCount && chant.isBar(syllable + 1)) {
+            return HYPHEN_BREAK_COST; //a bar line belongs at the end of the line before it
+        } else if (chant.isBar(syllable)) {
+            return 0;
+        } else if ((chant.syllableBits[syllable] & Chant.WORD_END) != 0) {
+            return WORD_BREAK_COST;
+        }
+        return HYPHEN_BREAK_COST;
+    }
+
+    // the space after a syllable; somewhat large if the syllable ends a word
+    private static int gapAfter(Chant chant, int syllable) {
+        return ((chant.syllableBits[syllable] & Chant.WORD_END) != 0) ?
+                ChantGeometry.WORD_OFFSET : ChantGeometry.SYLLABLE_OFFSET;
+    }
+
+    // the x value of the right edge of syllable last, on a line that starts with syllable first,
+    // before the line is justified
+    private static int naturalEnd(int[] syllableWidth, int[] clefsAt, Chant chant, int first, int last) {
+        int x = ChantGeometry.CLEF_START_X + ChantGeometry.CLEF_OFFSET;
+        for (int i = first; i < last; i++) {
+            x += syllableWidth[i] + gapAfter(chant, i) + clefsAt[i + 1] * ChantGeometry.CLEF_OFFSET;
+        }
+        return x + syllableWidth[last];
+    }
+
+    // Returns the index of the line that the given syllable is on.
+    public int lineOf(int syllable) {
+        int low = 0;
+        int high = lines.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            int[] syllables = lines.get(middle).syllables;
+            if (syllables.length > 0 && syllables[0] > syllable) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+
+    // collects the contents of a StaffLine while the layout is worked out
+    private static class LineBuilder {
+        private final int top;
+        private final List<Integer> syllables = new ArrayList<>();
+        private final List<Integer> syllableX = new ArrayList<>();
+        private final List<Integer> syllableSection = new ArrayList<>();
+        private final List<Integer> clefX = new ArrayList<>();
+        private final List<Integer> clefSection = new ArrayList<>();
+        private final List<Integer> clefIndex = new ArrayList<>();
+
+        private LineBuilder(int top) {
+            this.top = top;
+        }
+
+        private void addClef(int x, int section) {
+            clefX.add(x);
+            clefSection.add(section);
+            clefIndex.add(syllables.size());
+        }
+
+        private void addSyllable(int syllable, int x, int section) {
+            syllables.add(syllable);
+            syllableX.add(x);
+            syllableSection.add(section);
+        }
+
+        private StaffLine build(Chant chant, int custos) {
+            return new StaffLine(chant, top, toArray(syllables), toArray(syllableX), toArray(syllableSection),
+                    toArray(clefX), toArray(clefSection), toArray(clefIndex), custos);
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.util.Arrays;
+
+import biagioli.brandon.mobilegraduale.Chant.Clef;
+import biagioli.brandon.mobilegraduale.Chant.Mode;
+import biagioli.brandon.mobilegraduale.Chant.NoteFlag;
+
+/**
+ * Created by Brandon Biagioli on 4/11/2016.
+ */
+// This class parses a chant string from chants.xml and turns it into notes and syllables.
+// It walks the string once, one character at a time, and never splits it into smaller Strings
+// (the only Strings it creates are the syllable texts and error messages). As it goes, it reports
+// what it finds to a Listener, so the caller can build whatever it likes from the chant; parse(String)
+// uses a Listener that builds a Chant.
+//
+// The format is a list of tokens separated by spaces. Each token looks like lead(inner,inner,...):
+// MODE(eight), CLEF(do,4), BAR(quarter), or a syllable such as Do-(h_epi,re,mi-). A token without
+// parentheses, such as "Ps.", is a syllable without notes.
+public class ChantParser {
+
+    // Everything the parser finds is reported through this interface. Notes are reported once all
+    // of their flags are settled, which is at the end of their syllable (a note's flags can depend
+    // on the note after it), and always just before the syllable that holds them.
+    public interface Listener {
+        void onMode(Mode mode);
+        void onClef(Clef clef, int line); // a new clef starts a new section
+        void onNote(float value, int flags, int offset, int episemaHeight); // flags has a bit per NoteFlag
+        void onSyllable(String text, int bits, int noteWidth); // bits are Chant.WORD_END and so on
+        void onError(String message);
+    }
+
+    private static final String[] MODE_NAMES =
+            { "one", "two", "three", "four", "five", "six", "seven", "eight" };
+
+    private Listener listener;
+    private String text;
+
+    private boolean hasClef; // notes can't be parsed until the first clef is known
+    private float baseValue; // the value of 'do' in the current section
+
+    // per-syllable state; reused for every syllable. The notes of the syllable being parsed are
+    // kept here until their flags are settled.
+    private float[] values = new float[16];
+    private int[] noteFlags = new int[16];
+    private int[] offsets = new int[16];
+    private int[] episemaHeights = new int[16];
+    private int noteCount;
+    private int flags; //the flags for the next note
+    private boolean hasFlat;
+    private boolean hasNeutral;
+
+    // Parses text into a Chant.
+    public Chant parse(String text) {
+        final Chant.Builder builder = new Chant.Builder();
+        parse(text, new Listener() {
+            @Override
+            public void onMode(Mode mode) {
+                builder.mode(mode);
+            }
+
+            @Override
+            public void onClef(Clef clef, int line) {
+                builder.clef(clef, line);
+            }
+
+            @Override
+            public void onNote(float value, int flags, int offset, int episemaHeight) {
+                builder.note(value, flags, offset, episemaHeight);
+            }
+
+            @Override
+            public void onSyllable(String text, int bits, int noteWidth) {
+                builder.syllable(text, bits, noteWidth);
+            }
+
+            @Override
+            public void onError(String message) {
+                builder.error(message);
+            }
+        });
+        return builder.build();
+    }
+
+    // Parses text, reporting everything found to listener.
+    public void parse(String text, Listener listener) {
+        this.text = text;
+        this.listener = listener;
+        hasClef = false;
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            //skip the spaces between tokens
+            if (text.charAt(i) == ' ') {
+                i++;
+                continue;
+            }
+            //the lead runs up to the '(' (or the end of the token, for a syllable without notes)
+            int leadStart = i;
+            while (i < length && text.charAt(i) != ' ' && text.charAt(i) != '(') {
+                i++;
+            }
+            int leadEnd = i;
+            if (i == length || text.charAt(i) == ' ') {
+                parseText(leadStart, leadEnd);
+                continue;
+            }
+            //the inner part runs up to the ')'; anything after it and before the next space is ignored
+            int innerStart = ++i;
+            while (i < length && text.charAt(i) != ')' && text.charAt(i) != ' ') {
+                i++;
+            }
+            int innerEnd = i;
+            while (i < length && text.charAt(i) != ' ') {
+                i++;
+            }
+
+            if (innerStart == innerEnd) {
+                parseText(leadStart, leadEnd);
+            } else if (matches(leadStart, leadEnd, "MODE")) {
+                parseMode(innerStart, innerEnd);
+            } else if (matches(leadStart, leadEnd, "CLEF")) {
+                parseClef(innerStart, innerEnd);
+            } else if (matches(leadStart, leadEnd, "BAR")) {
+                parseBar(innerStart, innerEnd);
+            } else {
+                //if lead wasn't MODE, CLEF, or BAR, it's a regular note, and lead was the syllable
+                parseSyllable(leadStart, leadEnd, innerStart, innerEnd);
+            }
+        }
+        this.text = null;
+        this.listener = null;
+    }
+
+    // a syllable without notes, such as the 'Ps.' that introduces a psalm verse
+    private void parseText(int start, int end) {
+        if (!checkClef()) {
+            return;
+        }
+        listener.onSyllable(text.substring(start, end), Chant.WORD_END, 0);
+    }
+
+    private void parseMode(int start, int end) {
+        for (int m = 0; m < MODE_NAMES.length; m++) {
+            if (matches(start, end, MODE_NAMES[m])) {
+                listener.onMode(Mode.values()[m]);
+                return;
+            }
+        }
+        listener.onError("Error in resource string: \"" + text.substring(start, end) + "\" is an invalid mode\n");
+    }
+
+    private void parseClef(int start, int end) {
+        int comma = indexOf(',', start, end);
+        Clef clef = Clef.DO;
+        if (matches(start, comma, "fa")) {
+            clef = Clef.FA;
+        } else if (!matches(start, comma, "do")) {
+            listener.onError("Error in resource string: \"" + text.substring(start, comma) + "\" is an invalid clef\n");
+        }
+        int line = 0;
+        for (int i = comma + 1; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                listener.onError("Error in resource string: \"" + text.substring(start, end) + "\" is an invalid clef\n");
+                break;
+            }
+            line = line * 10 + (c - '0');
+        }
+
+        hasClef = true;
+        baseValue = line;
+        if (clef == Clef.FA) {
+            baseValue -= 1.5f;//the fa clef is different; the base value must be do
+        }
+        listener.onClef(clef, line);
+    }
+
+    // a bar line is treated like a special kind of note
+    private void parseBar(int start, int end) {
+        if (!checkClef()) {
+            return;
+        }
+        int barFlags = 0;
+        if (matches(start, end, "quarter")) {
+            barFlags = NoteFlag.QUARTER_BAR.bit;
+        } else if (matches(start, end, "half")) {
+            barFlags = NoteFlag.HALF_BAR.bit;
+        } else if (matches(start, end, "full")) {
+            barFlags = NoteFlag.FULL_BAR.bit;
+        } else if (matches(start, end, "double")) {
+            barFlags = NoteFlag.DOUBLE_BAR.bit;
+        } else {
+            listener.onError("Error in resource string: \"" + text.substring(start, end) + "\" is an invalid bar\n");
+        }
+        //the value (4) will be ignored, but every note needs one
+        listener.onNote(4f, barFlags, ChantGeometry.BASE_NOTE_OFFSET, ChantGeometry.BASE_EPISEMA_HEIGHT);
+        listener.onSyllable(" ", Chant.WORD_END | Chant.HAS_NOTES, ChantGeometry.BASE_NOTE_OFFSET);
+    }
+
+    private void parseSyllable(int leadStart, int leadEnd, int innerStart, int innerEnd) {
+        if (!checkClef()) {
+            return;
+        }
+        //the resource string can't have ' ' in it, that would confuse the parser
+        String syllableText = text.substring(leadStart, leadEnd).replace('_', ' ');
+        boolean wordEnd = text.charAt(leadEnd - 1) != '-';
+
+        noteCount = 0;
+        flags = 0;
+        hasFlat = false;
+        hasNeutral = false;
+        int itemStart = innerStart;
+        while (itemStart < innerEnd) {
+            int itemEnd = indexOf(',', itemStart, innerEnd);
+            if (itemEnd > itemStart) {
+                parseItem(itemStart, itemEnd);
+            }
+            itemStart = itemEnd + 1;
+        }
+
+        int noteWidth = finishNotes();
+        int bits = Chant.HAS_NOTES;
+        bits |= wordEnd ? Chant.WORD_END : 0;
+        bits |= hasFlat ? Chant.HAS_FLAT : 0;
+        bits |= hasNeutral ? Chant.HAS_NEUTRAL : 0;
+        listener.onSyllable(syllableText, bits, noteWidth);
+    }
+
+    // an item is either the name of a solfege note (perhaps with an octave mark) or a flag with
+    // information about the next note or the syllable
+    private void parseItem(int start, int end) {
+        float noteValue = baseValue;
+        //the octave marks (which are ignored after a flag) come at the end; "do--" is two octaves down
+        int nameEnd = end;
+        while (nameEnd > start + 1) {
+            char last = text.charAt(nameEnd - 1);
+            if (last == '-') {
+                noteValue -= 3.5f;//adjust the note value to be in a lower octave
+            } else if (last == '+') {
+                noteValue += 3.5f;//adjust the note value to be in a higher octave
+            } else {
+                break;
+            }
+            nameEnd--;
+        }
+
+        if (matches(start, nameEnd, "do")) {
+            addNote(noteValue);
+        } else if (matches(start, nameEnd, "re")) {
+            addNote(noteValue + 0.5f);
+        } else if (matches(start, nameEnd, "mi")) {
+            addNote(noteValue + 1);
+        } else if (matches(start, nameEnd, "fa")) {
+            addNote(noteValue + 1.5f);
+        } else if (matches(start, nameEnd, "sol")) {
+            addNote(noteValue + 2);
+        } else if (matches(start, nameEnd, "la")) {
+            addNote(noteValue + 2.5f);
+        } else if (matches(start, nameEnd, "te")) {
+            hasFlat = true;
+            addNote(noteValue + 3);
+        } else if (matches(start, nameEnd, "ti")) {
+            addNote(noteValue + 3);
+        } else if (matches(start, nameEnd, "neut")) {
+            hasNeutral = true;
+        } else if (matches(start, nameEnd, "liq")) {
+            flags |= NoteFlag.LIQUESCENT.bit;
+        } else if (matches(start, nameEnd, "dot")) {
+            flags |= NoteFlag.DOT.bit;
+        } else if (matches(start, nameEnd, "quil")) {
+            flags |= NoteFlag.QUILISMA.bit;
+        } else if (matches(start, nameEnd, "por")) {
+            flags |= NoteFlag.PORRECTUS.bit;
+        } else if (matches(start, nameEnd, "torc")) {
+            flags |= NoteFlag.TORCULUS.bit;
+        } else if (matches(start, nameEnd, "scand")) {
+            flags |= NoteFlag.SCANDICUS.bit;
+        } else if (matches(start, nameEnd, "cliv")) {
+            flags |= NoteFlag.CLIVIS.bit;
+        } else if (matches(start, nameEnd, "v_epi")) {
+            flags |= NoteFlag.V_EPISEMA.bit;
+        } else if (matches(start, nameEnd, "h_epi")) {
+            flags |= NoteFlag.H_EPISEMA.bit;
+        } else {
+            listener.onError("Error in resource string: \"" + text.substring(start, nameEnd) + "\" is not a recognized note or flag");
+        }
+    }
+
+    // Creates a note with the flags collected so far. Before that, the flags of the previous note
+    // are checked, to determine whether any flags need to be changed based on the relationships
+    // between the current note and the previous note.
+    private void addNote(float noteValue) {
+        if (noteCount > 0) {
+            int previous = noteCount - 1;
+            float previousValue = values[previous];
+            int previousFlags = noteFlags[previous];
+            //flag the second and third notes of a torculus and of a porrectus
+            if (Chant.has(previousFlags, NoteFlag.TORCULUS)) {
+                flags |= NoteFlag.SECOND_TORCULUS.bit;
+            }
+            if (Chant.has(previousFlags, NoteFlag.SECOND_TORCULUS)) {
+                flags |= NoteFlag.THIRD_TORCULUS.bit;
+            }
+            if (Chant.has(previousFlags, NoteFlag.PORRECTUS)) {
+                flags |= NoteFlag.SECOND_PORRECTUS.bit;
+            }
+            if (Chant.has(previousFlags, NoteFlag.SECOND_PORRECTUS)) {
+                flags |= NoteFlag.THIRD_PORRECTUS.bit;
+            }
+            //each note that is different than the previous should get the
+            //JUMP flag if it is more than a step different
+            if (noteValue - previousValue > 0.5f || noteValue - previousValue < -0.5f) {
+                flags |= NoteFlag.JUMP.bit;
+                //if the previous note was the last note of a porrectus, it should not
+                //be STACKED_ASCENDING
+                if (Chant.has(previousFlags, NoteFlag.THIRD_PORRECTUS)) {
+                    previousFlags &= ~NoteFlag.STACKED_ASCENDING.bit;
+                }
+            }
+            if (previousValue > noteValue) {
+                //if the previous note was ascending, and this note is descending,
+                //flag the previous note as a peak
+                if (Chant.has(previousFlags, NoteFlag.ASCENDING)) {
+                    previousFlags |= NoteFlag.PEAK.bit;
+                }
+                //flag the second note of a clivis
+                if (Chant.has(previousFlags, NoteFlag.CLIVIS)) {
+                    flags |= NoteFlag.SECOND_CLIVIS.bit;
+                }
+                //if there are at least three descending notes in a row, each after the
+                //first needs the RHOMBUS flag
+                if (!Chant.has(flags, NoteFlag.SCANDICUS)) {
+                    if (Chant.has(previousFlags, NoteFlag.RHOMBUS) &&
+                            !Chant.has(previousFlags, NoteFlag.DOT) &&
+                            !Chant.has(flags, NoteFlag.TORCULUS)) {
+                        flags |= NoteFlag.RHOMBUS.bit;
+                    } else if (Chant.has(previousFlags, NoteFlag.SECOND_DESCENDING) &&
+                            !Chant.has(previousFlags, NoteFlag.DOT) &&
+                            !Chant.has(previousFlags, NoteFlag.THIRD_TORCULUS) &&
+                            !Chant.has(flags, NoteFlag.TORCULUS)) {
+                        previousFlags &= ~NoteFlag.SECOND_DESCENDING.bit;
+                        previousFlags |= NoteFlag.RHOMBUS.bit;
+                        flags |= NoteFlag.RHOMBUS.bit;
+                    } else {
+                        if (!Chant.has(previousFlags, NoteFlag.STACKED_ASCENDING)) {
+                            previousFlags |= NoteFlag.FIRST_DESCENDING.bit;
+                        }
+                        flags |= NoteFlag.SECOND_DESCENDING.bit;
+                    }
+                }
+            } else if (previousValue < noteValue) {
+                //each ascending note is flagged as such
+                flags |= NoteFlag.ASCENDING.bit;
+                //Each second ascending note should get the STACKED_ASCENDING flag,
+                //with some exceptions. The reason for the exceptions is that
+                //a note with the STACKED_ASCENDING flag will be positioned directly
+                //above the previous note, which is not always desired.
+                if (!Chant.has(previousFlags, NoteFlag.STACKED_ASCENDING)
+                        && !Chant.has(previousFlags, NoteFlag.RHOMBUS)
+                        && !Chant.has(previousFlags, NoteFlag.TORCULUS)
+                        && !Chant.has(previousFlags, NoteFlag.THIRD_TORCULUS)
+                        && !Chant.has(flags, NoteFlag.PORRECTUS)
+                        && !(Chant.has(flags, NoteFlag.H_EPISEMA)
+                            || Chant.has(previousFlags, NoteFlag.H_EPISEMA))
+                        && !Chant.has(previousFlags, NoteFlag.SCANDICUS)
+                        && !Chant.has(previousFlags, NoteFlag.SECOND_CLIVIS)
+                        && !Chant.has(flags, NoteFlag.CLIVIS)
+                        && !Chant.has(flags, NoteFlag.QUILISMA)) {
+                    flags |= NoteFlag.STACKED_ASCENDING.bit;
+                    previousFlags &= ~NoteFlag.JUMP.bit;
+                }
+            } else /*previousValue == noteValue*/ {
+                previousFlags |= NoteFlag.REPEATED.bit;
+            }
+            noteFlags[previous] = previousFlags;
+        }
+        //add the new note (which is immediately the "previous" note)
+        if (noteCount == values.length) {
+            values = Arrays.copyOf(values, noteCount * 2);
+            noteFlags = Arrays.copyOf(noteFlags, noteCount * 2);
+            offsets = Arrays.copyOf(offsets, noteCount * 2);
+            episemaHeights = Arrays.copyOf(episemaHeights, noteCount * 2);
+        }
+        values[noteCount] = noteValue;
+        noteFlags[noteCount] = flags;
+        noteCount++;
+        //reset flags for the next note
+        flags = 0;
+    }
+
+    // Once all of a syllable's notes are known, their flags are settled, so this works out the
+    // offsets and episema heights of the notes, reports them, and returns the width of the notes.
+    private int finishNotes() {
+        int width = 0;
+        if (hasFlat || hasNeutral) {
+            width = ChantGeometry.BASE_NOTE_OFFSET;
+        }
+        for (int i = 0; i < noteCount; i++) {
+            offsets[i] = noteOffset(noteFlags[i], i < noteCount - 1 ? noteFlags[i + 1] : 0);
+            width += offsets[i];
+            episemaHeights[i] = ChantGeometry.BASE_EPISEMA_HEIGHT;
+        }
+        //if sequential notes have horizontal episemas, get their heights to line up
+        int runStart = 0;
+        while (runStart < noteCount) {
+            if (!Chant.has(noteFlags[runStart], NoteFlag.H_EPISEMA)) {
+                runStart++;
+                continue;
+            }
+            int runEnd = runStart;
+            float maxValue = values[runStart];
+            while (runEnd < noteCount && Chant.has(noteFlags[runEnd], NoteFlag.H_EPISEMA)) {
+                maxValue = (maxValue > values[runEnd]) ? maxValue : values[runEnd];
+                runEnd++;
+            }
+            for (int i = runStart; i < runEnd; i++) {
+                episemaHeights[i] = ChantGeometry.BASE_EPISEMA_HEIGHT
+                        + (int) ((maxValue - values[i]) * ChantGeometry.STAFF_SPACE);
+            }
+            runStart = runEnd;
+        }
+        for (int i = 0; i < noteCount; i++) {
+            listener.onNote(values[i], noteFlags[i], offsets[i], episemaHeights[i]);
+        }
+        return width;
+    }
+
+    // The distance from a note to the note after it, which depends on the flags of both notes
+    // (nextFlags is 0 for the last note of a syllable).
+    protected static int noteOffset(int flags, int nextFlags) {
+        if (Chant.has(nextFlags, NoteFlag.LIQUESCENT) || Chant.has(nextFlags, NoteFlag.STACKED_ASCENDING)) {
+            return 0;
+        } else if (Chant.has(flags, NoteFlag.DOT)) {
+            return ChantGeometry.BASE_NOTE_OFFSET + 15;
+        } else if (Chant.has(flags, NoteFlag.PORRECTUS)) {
+            return (int)(ChantGeometry.BASE_NOTE_OFFSET * 2.5f);
+        } else if (Chant.has(flags, NoteFlag.REPEATED) || Chant.has(flags, NoteFlag.STACKED_ASCENDING)) {
+            return ChantGeometry.BASE_NOTE_OFFSET + 5;
+        }
+        return ChantGeometry.BASE_NOTE_OFFSET;
+    }
+
+    private boolean checkClef() {
+        if (!hasClef) {
+            listener.onError("Error in resource string: a clef is needed before any notes\n");
+        }
+        return hasClef;
+    }
+
+    // true if the characters from start to end are exactly word
+    private boolean matches(int start, int end, String word) {
+        return end - start == word.length() && text.regionMatches(start, word, 0, end - start);
+    }
+
+    // the index of c between start and end, or end if c isn't there
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,261 @@
+package biagioli.brandon.mobilegraduale;
+
+import biagioli.brandon.mobilegraduale.Chant.Clef;
+import biagioli.brandon.mobilegraduale.Chant.NoteFlag;
+
+import static biagioli.brandon.mobilegraduale.ChantGeometry.*;
+
+/**
+ * Created by Brandon Biagioli on 4/11/2016.
+ */
+// Draws a chant, one line of its layout at a time, onto a ChantCanvas. This is the drawing code that
+// used to be in GregorianChantView.
+//
+// A renderer keeps nothing between one drawing and the next: what it needs to know along the way
+// (which clef a syllable is under, and the note before the one being drawn) is passed from method
+// to method, and everything else comes from the Chant and the ChantLayout, which never change. So
+// one renderer can draw the same chant onto any number of canvases at once, from any threads (each
+// thread with its own ChantCanvas), which is what lets chants be drawn off the UI thread.
+//
+// Drawing happens every frame while the chant is scrolled, so nothing in here allocates either: the
+// chant is read straight out of its arrays (ChantRendererAllocationTest checks this).
+public class ChantRenderer {
+    protected final Chant chant;
+    protected final String[] errorMessages;
+
+    public ChantRenderer(Chant chant) {
+        this.chant = chant;
+        errorMessages = chant.errorMessages.toArray(new String[chant.errorMessages.size()]);
+    }
+
+    // This method draws the error message(s), if there are any, above the first line of the chant.
+    public void drawErrors(ChantCanvas canvas) {
+        for (int i = 0; i < errorMessages.length; i++) {
+            canvas.drawText(errorMessages[i], 40, 50 + ERROR_LINE_HEIGHT * i, ChantCanvas.ERROR_PAINT);
+        }
+    }
+
+    // This method draws the whole chant: the error messages, and then every line of the layout.
+    public void draw(ChantCanvas canvas, ChantLayout layout) {
+        drawErrors(canvas);
+        for (int i = 0; i < layout.lines.size(); i++) {
+            drawStaffLine(canvas, layout, layout.lines.get(i));
+        }
+    }
+
+    // This method draws one line of the chant: the staff, the clefs and syllables on it, and the custos.
+    public void drawStaffLine(ChantCanvas canvas, ChantLayout layout, ChantLayout.StaffLine line) {
+        //draw the staff lines
+        for (int i = 0; i < 4; i++) {
+            float y = line.top + STAFF_START_Y + i * STAFF_SPACE;
+            canvas.drawLine(STAFF_START_X, y, layout.width - STAFF_END_MARGIN, y, ChantCanvas.STAFF_PAINT);
+        }
+
+        //draw the clefs and syllables in order (a clef can be in the middle of a line,
+        //if a new section starts there)
+        int clef = 0;
+        for (int i = 0; i <= line.syllables.length; i++) {
+            while (clef < line.clefX.length && line.clefIndex[clef] == i) {
+                drawClef(canvas, line.clefSection[clef], line.clefX[clef], line.top);
+                clef++;
+            }
+            if (i < line.syllables.length) {
+                //draw the syllable (and by extentions, all of its notes)
+                canvas.save();
+                canvas.translate(line.syllableX[i], line.top);
+                drawSyllable(canvas, line.syllableSection[i], line.syllables[i]);
+                canvas.restore();
+            }
+        }
+
+        if (line.custos >= 0) {
+            // a custos is a half-drawn note at the end of a line,
+            //indicating what the first note of the next line will be
+            canvas.save();
+            canvas.translate(layout.width - BASE_NOTE_OFFSET * 2 - STAFF_END_MARGIN, line.top);
+            drawCustos(canvas, line.custos);
+            canvas.restore();
+        }
+    }
+
+    // This method draws the clef (either do or fa) that starts a section
+    protected void drawClef(ChantCanvas canvas, int section, float xOffset, float yOffset) {
+        canvas.save();
+        canvas.translate(xOffset, yOffset);
+        int clefLine = chant.sectionClefLine[section];
+        if(chant.sectionClef[section] == Clef.FA) /*a fa clef is a do clef, plus a little bit*/ {
+            //here we do the little bit: a punctum, joined to the line below it
+            drawNote(canvas, clefLine, NoteFlag.STACKED_ASCENDING.bit | NoteFlag.JUMP.bit, 0, 0, clefLine - 1, 0);
+            canvas.translate(BASE_NOTE_OFFSET+2,0);
+        }
+        canvas.translate(0, (5.5f - clefLine) * STAFF_SPACE);
+
+        canvas.drawGlyph(ChantCanvas.DO_CLEF);
+
+        canvas.restore();
+    }
+
+    // This method draws a syllable, which is in the given section. In particular, it draws the text
+    // and calls drawNote for each of its notes.
+    protected void drawSyllable(ChantCanvas canvas, int section, int syllable) {
+        //lyrics
+        canvas.drawText(chant.syllableText[syllable], 0, STAFF_START_Y + 4 * STAFF_SPACE + TEXT_START_OFFSET,
+                ChantCanvas.TEXT_PAINT);
+        //flat, if there is one
+        if ((chant.syllableBits[syllable] & Chant.HAS_FLAT) != 0) {
+            drawFlat(canvas, section);
+            canvas.translate(BASE_NOTE_OFFSET,0);
+        } else if ((chant.syllableBits[syllable] & Chant.HAS_NEUTRAL) != 0) {
+            drawNeutral(canvas, section);
+            canvas.translate(BASE_NOTE_OFFSET,0);
+        }
+        //notes; the parser only ever joins a note to the notes before it in the same syllable, so
+        //the first note has nothing before it
+        int first = chant.syllableNoteStart[syllable];
+        for (int n = first; n < chant.syllableNoteStart[syllable + 1]; n++) {
+            float previousValue = (n > first) ? chant.noteValue[n - 1] : chant.noteValue[n];
+            int previousFlags = (n > first) ? chant.noteFlags[n - 1] : 0;
+            drawNote(canvas, chant.noteValue[n], chant.noteFlags[n], chant.noteOffset[n], chant.noteEpisemaHeight[n],
+                    previousValue, previousFlags);
+            canvas.translate(chant.noteOffset[n],0);
+        }
+    }
+
+    // This method draws a note, and does all the work of interpreting the note's flags (and those of
+    // the note before it) to determine how to draw it.
+    protected void drawNote(ChantCanvas canvas, float value, int flags, int offset, int episemaHeight,
+                            float previousValue, int previousFlags) {
+        canvas.save();
+
+        if(Chant.has(flags, NoteFlag.QUARTER_BAR)) {
+            //draw a quarter bar
+            canvas.drawLine(0, STAFF_START_Y - STAFF_SPACE/2, 0, STAFF_START_Y + STAFF_SPACE / 2,
+                    ChantCanvas.STAFF_PAINT);
+        } else if(Chant.has(flags, NoteFlag.HALF_BAR)) {
+            //draw a half bar
+            canvas.drawLine(0, STAFF_START_Y + STAFF_SPACE/2, 0, STAFF_START_Y + STAFF_SPACE * 2.5f,
+                    ChantCanvas.STAFF_PAINT);
+        } else if(Chant.has(flags, NoteFlag.FULL_BAR)) {
+            //draw a full bar
+            canvas.drawLine(0, STAFF_START_Y, 0, STAFF_START_Y + STAFF_SPACE * 3, ChantCanvas.STAFF_PAINT);
+        } else if(Chant.has(flags, NoteFlag.DOUBLE_BAR)) {
+            //draw a double bar
+            canvas.drawLine(-5, STAFF_START_Y, -5, STAFF_START_Y + STAFF_SPACE * 3, ChantCanvas.STAFF_PAINT);
+            canvas.drawLine(5, STAFF_START_Y, 5, STAFF_START_Y + STAFF_SPACE * 3, ChantCanvas.STAFF_PAINT);
+        } else {
+            //a normal note, not a bar
+            canvas.translate(0, STAFF_START_Y + STAFF_SPACE * (4 - value) - 10);
+            if (Chant.has(flags, NoteFlag.JUMP) &&
+                    !Chant.has(flags, NoteFlag.RHOMBUS) &&
+                    !Chant.has(previousFlags, NoteFlag.DOT) &&
+                    !Chant.has(flags, NoteFlag.SCANDICUS) &&
+                    !Chant.has(flags, NoteFlag.QUILISMA)) {
+                if (Chant.has(flags, NoteFlag.STACKED_ASCENDING)) {
+                    //draw a line from the level of the previous note to this note, on the right side of this note
+                    canvas.drawLine(19, 10, 19, STAFF_SPACE * (value - previousValue), ChantCanvas.STAFF_PAINT);
+                } else if (!Chant.has(flags, NoteFlag.SECOND_PORRECTUS)){
+                    //draw a line from the level of the previous note to this note, on the left side of this note
+                    canvas.drawLine(1, 10, 1, STAFF_SPACE * (value - previousValue), ChantCanvas.STAFF_PAINT);
+                }
+            }
+            if (Chant.has(flags, NoteFlag.FIRST_DESCENDING) &&
+                    !Chant.has(flags, NoteFlag.PEAK) &&
+                    !Chant.has(flags, NoteFlag.RHOMBUS)&&
+                    !Chant.has(flags, NoteFlag.THIRD_TORCULUS)) {
+                //draw a descending stem for this note
+                canvas.drawLine(1, 10, 1, STAFF_SPACE, ChantCanvas.STAFF_PAINT);
+            }
+            if (Chant.has(flags, NoteFlag.LIQUESCENT)) {
+                //draw a line from the previous note to this note
+                canvas.drawLine(19, 10, 19, STAFF_SPACE * (value - previousValue), ChantCanvas.STAFF_PAINT);
+                //draw the note smaller
+                canvas.translate(5,5);
+                canvas.scale(0.75f,0.75f);
+            }
+            if (Chant.has(flags, NoteFlag.DOT)) {
+                //draw a little down next to the note, down and to the right
+                canvas.drawCircle(27.5f, -5, 5, ChantCanvas.NOTE_PAINT);
+            }
+            if (Chant.has(flags, NoteFlag.H_EPISEMA)) {
+                //draw a horizontal line above this note
+                canvas.drawLine(0,-episemaHeight,offset,-episemaHeight,ChantCanvas.EPISEMA_PAINT);
+            }
+            if (Chant.has(flags, NoteFlag.V_EPISEMA)) {
+                if (Chant.has(flags, NoteFlag.STACKED_ASCENDING)) {
+                    //draw a vertical line above this note
+                    canvas.drawLine(10,-15,10,-30,ChantCanvas.EPISEMA_PAINT);
+                } else {
+                    canvas.drawLine(10,35,10,50,ChantCanvas.EPISEMA_PAINT);
+                }
+            }
+            if (Chant.has(flags, NoteFlag.PORRECTUS)) {
+                //do nothing; wait until the second part of the porrectus to draw
+            } else if (Chant.has(flags, NoteFlag.SECOND_PORRECTUS)) {
+                //this is a diagonal brush-stroke from the first note of the porrectus to the second
+                canvas.drawPorrectus(value - previousValue);
+            } else if (Chant.has(flags, NoteFlag.QUILISMA)) {
+                //draw the quilisma (that is, just the jagged punctum)
+                canvas.drawGlyph(ChantCanvas.QUILISMA);
+            } else if (Chant.has(flags, NoteFlag.RHOMBUS)) {
+                //draw a small rhombus
+                canvas.drawGlyph(ChantCanvas.RHOMBUS);
+            } else {
+                //draw a punctum, which looks like a small arched rectangle
+                canvas.drawGlyph(ChantCanvas.PUNCTUM);
+            }
+        }
+        canvas.restore();
+    }
+
+    // This method draw a custos.
+    protected void drawCustos(ChantCanvas canvas, int note) {
+        canvas.translate(0, STAFF_START_Y + STAFF_SPACE * (4 - chant.noteValue[note]) - 10);
+
+        if (Chant.has(chant.noteFlags[note], NoteFlag.H_EPISEMA)) {
+            int episemaHeight = chant.noteEpisemaHeight[note];
+            canvas.drawLine(-BASE_NOTE_OFFSET/2,-episemaHeight,BASE_NOTE_OFFSET/2,-episemaHeight,
+                    ChantCanvas.EPISEMA_PAINT);
+        }
+
+        //a custos is drawn as half a punctum
+        //I have decided to temporarily just draw a rectangle
+        //instead of the fancier half-punctum I was attempting
+        canvas.drawRect(-BASE_NOTE_OFFSET/2,0,0,BASE_NOTE_OFFSET,ChantCanvas.NOTE_PAINT);
+    }
+
+    // This method draws a 'flat' symbol at the start of the current syllable.
+    protected void drawFlat(ChantCanvas canvas, int section) {
+        canvas.save();
+        translateToAccidental(canvas, section);
+        canvas.drawLine(0,-10,0,20,ChantCanvas.STAFF_PAINT);
+        canvas.drawLine(0,20,10,25,ChantCanvas.STAFF_PAINT);
+        canvas.drawLine(10,25,10,15,ChantCanvas.STAFF_PAINT);
+        canvas.drawLine(10,15,0,10,ChantCanvas.STAFF_PAINT);
+        canvas.restore();
+    }
+
+    // This method draws a 'neutral' symbol at the start of the current syllable.
+    protected void drawNeutral(ChantCanvas canvas, int section) {
+        canvas.save();
+        translateToAccidental(canvas, section);
+        canvas.drawLine(0,-10,0,25,ChantCanvas.STAFF_PAINT);
+        canvas.drawLine(0,25,10,20,ChantCanvas.STAFF_PAINT);
+        canvas.drawLine(0,15,10,10,ChantCanvas.STAFF_PAINT);
+        canvas.drawLine(10,10,10,45,ChantCanvas.STAFF_PAINT);
+        canvas.restore();
+    }
+
+    // where a flat or neutral goes depends on the current clef
+    private void translateToAccidental(ChantCanvas canvas, int section) {
+        int clefLine = chant.sectionClefLine[section];
+        if (chant.sectionClef[section] == Clef.DO) {
+            canvas.translate(0, STAFF_START_Y + STAFF_SPACE * (4 - clefLine) +10);
+        } else /*Fa Clef*/ {
+            if (clefLine < 3.5) {
+                canvas.translate(0, STAFF_START_Y + STAFF_SPACE * (2 - clefLine) + 10);
+            } else {
+                canvas.translate(0, STAFF_START_Y + STAFF_SPACE * (5.5f - clefLine) + 10);
+            }
+        }
+    }
+}
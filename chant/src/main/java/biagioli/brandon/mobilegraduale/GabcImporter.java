@@ -0,0 +1,634 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Converts chants written in GABC, the notation of Gregorio (and of the large collections of chant
+// online), into the project's own notation (see ChantParser), so that the repertoire doesn't have to
+// be typed in by hand. Run from the build (see importGabc in app/build.gradle) with the files or
+// directories to import: every .gabc file is converted, checked by parsing it, and written both to
+// imported.xml, in the form of chants.xml (so that it can be added to it), and to chants.bin.
+//
+// Thousands of files can be imported at once. Each file is read as a stream, a character at a time,
+// and once its chant is written only its name is kept (see ChantFile.Writer), so the memory needed
+// doesn't grow with the number of files. Progress is printed every PROGRESS_INTERVAL files, and a
+// file that can't be converted is reported and left out instead of stopping the import.
+//
+// A GABC file has a header of "key: value;" lines (of which name, office-part and mode are used),
+// a line "%%", and then the chant: syllables such as te(hg), where h and g are notes, named by their
+// place on the staff from a (below the bottom line) to m. The notes that follow each other without
+// a space or a '/' are a neume, and its shape becomes the flag the parser already has for it: a
+// clivis (hg) gets cliv, a torculus (ghg) torc, a porrectus (hgh) por and a scandicus (fgh) scand,
+// and the parser works out the rest from the notes. Quilismas (w), liquescents (~ < >), dots (.)
+// and episemas (' _) have flags of their own, and a flat (ix) makes the note te, as a clef with a
+// flat (cb3) does every ti. What this notation has no way to show (virga, oriscus, stropha, and so
+// on) becomes a plain note.
+public class GabcImporter {
+    public static final String OUTPUT_NAME = "imported.xml";
+
+    private static final int PROGRESS_INTERVAL = 100;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] MODE_NAMES =
+            { "one", "two", "three", "four", "five", "six", "seven", "eight" };
+    private static final String[] NOTE_NAMES = { "do", "re", "mi", "fa", "sol", "la", "ti" };
+    //for each office-part in a header: the part it is in chants.xml, and the start of a chant's name
+    private static final String[][] PARTS = {
+            { "introitus", "introit", "Introit" }, { "graduale", "gradual", "Gradual" },
+            { "alleluia", "alleluia", "Alleluia" }, { "offertorium", "offertory", "Offertory" },
+            { "communio", "communion", "Communion" }, { "tractus", "tract", "Tract" },
+            { "sequentia", "sequence", "Sequence" } };
+    private static final String[] OTHER_PART = { "", "other", "Chant" };
+
+    //the marks of a note that have flags of their own
+    private static final int QUILISMA = 1;
+    private static final int LIQUESCENT = 2;
+    private static final int DOT = 4;
+    private static final int V_EPISEMA = 8;
+    private static final int H_EPISEMA = 16;
+    private static final int FLAT = 32;
+
+    private Reader in;
+    private int next; //the next character of in, or -1 at the end
+
+    //what the header says about the file being converted
+    private String name;
+    private String[] part;
+    private int mode;
+
+    private final StringBuilder notation = new StringBuilder();
+    private final List<String> errors = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder(); //the text of the syllable being read
+    private final StringBuilder notes = new StringBuilder(); //what is between its ( and )
+    private final StringBuilder items = new StringBuilder(); //the items it becomes (see ChantParser)
+    private boolean hasClef;
+    private int doPosition; //where do is in the current section, as a GABC note less 'a'
+    private int flatPosition; //the note that is flat until the end of the word, or -1
+    private boolean keyFlat; //whether the clef has a flat (cb3), which makes every ti in its section te
+    private int naturalPosition; //the note a natural (iy) takes the key flat off until the end of the word, or -1
+
+    //the notes of the neume being read, as GABC notes less 'a', and their marks
+    private int[] positions = new int[16];
+    private int[] marks = new int[16];
+    private int neumeLength;
+
+    // args: the directory to write imported.xml and chants.bin to, then the GABC files to import, or
+    // directories to import every .gabc file in (and in the directories in them)
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: GabcImporter <output directory> <gabc file or directory>...");
+            System.exit(2);
+        }
+        File outputDir = new File(args[0]);
+        List<File> files = new ArrayList<>();
+        for (int a = 1; a < args.length; a++) {
+            findFiles(new File(args[a]), files, true);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+        int count = importFiles(files, outputDir, System.out, System.err);
+        System.out.println("Imported " + count + " chants from " + files.size() + " files to "
+                + new File(outputDir, OUTPUT_NAME));
+    }
+
+    // Converts each of files, writing the chants to imported.xml and chants.bin in outputDir, and
+    // returns how many there are. Progress is printed to progress, and the files that are left out,
+    // with the reasons why, to errors.
+    public static int importFiles(List<File> files, File outputDir, PrintStream progress, PrintStream errors)
+            throws IOException {
+        GabcImporter importer = new GabcImporter();
+        ChantParser parser = new ChantParser();
+        Set<String> names = new HashSet<>();
+        //the bodies of the chants are written as they come, and copied in after the index at the end
+        File bodiesFile = new File(outputDir, ChantFile.ASSET_NAME + ".part");
+        OutputStream bodies = new BufferedOutputStream(new FileOutputStream(bodiesFile));
+        ChantFile.Writer chants = new ChantFile.Writer(bodies);
+        Writer xml = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(outputDir, OUTPUT_NAME)), UTF_8));
+        try {
+            xml.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<chants>\n");
+            for (int f = 0; f < files.size(); f++) {
+                File file = files.get(f);
+                List<String> problems = new ArrayList<>();
+                String notation = "";
+                Chant chant = null;
+                try {
+                    Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+                    try {
+                        notation = importer.convert(in);
+                    } finally {
+                        in.close();
+                    }
+                    problems.addAll(importer.errors());
+                    if (problems.isEmpty()) {
+                        chant = parser.parse(notation);
+                        if (chant.sectionCount == 0) {
+                            problems.add("Error in chant: the chant has no clef");
+                        }
+                        problems.addAll(chant.errorMessages);
+                    }
+                } catch (IOException e) {
+                    problems.add("Could not read the file: " + e.getMessage());
+                }
+
+                if (problems.isEmpty()) {
+                    String name = importer.chantName(file);
+                    for (int n = 2; !names.add(name); n++) {
+                        name = importer.chantName(file) + "_" + n;
+                    }
+                    chants.add(name, importer.part(), chant);
+                    xml.write("    <chant name=\"" + escape(name) + "\" part=\"" + importer.part() + "\">"
+                            + escape(notation) + "</chant>\n");
+                } else {
+                    for (String problem : problems) {
+                        errors.println(file + ": " + problem.trim());
+                    }
+                }
+                if ((f + 1) % PROGRESS_INTERVAL == 0) {
+                    progress.println("Read " + (f + 1) + " of " + files.size() + " files, and imported "
+                            + chants.chantCount() + " chants");
+                }
+            }
+            xml.write("</chants>\n");
+        } finally {
+            xml.close();
+            bodies.close();
+        }
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(outputDir, ChantFile.ASSET_NAME)));
+        InputStream in = new BufferedInputStream(new FileInputStream(bodiesFile));
+        try {
+            chants.writeIndex(out);
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+            out.close();
+            bodiesFile.delete();
+        }
+        return chants.chantCount();
+    }
+
+    // adds file to files if it is a GABC file (or was asked for by name), or the GABC files in it
+    // if it is a directory, in the order of their names
+    private static void findFiles(File file, List<File> files, boolean named) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                findFiles(child, files, false);
+            }
+        } else if (named || file.getName().endsWith(".gabc")) {
+            files.add(file);
+        }
+    }
+
+    // Reads a GABC file from in, and returns its chant in the project's notation. Anything that
+    // couldn't be converted is added to errors.
+    public String convert(Reader in) throws IOException {
+        this.in = in;
+        next = in.read();
+        if (next == '\ufeff') {
+            read(); //a byte order mark
+        }
+        name = "";
+        part = OTHER_PART;
+        mode = -1;
+        notation.setLength(0);
+        errors.clear();
+        hasClef = false;
+        flatPosition = -1;
+        naturalPosition = -1;
+        keyFlat = false;
+        neumeLength = 0;
+
+        readHeader();
+        if (mode >= 0) {
+            notation.append("MODE(").append(MODE_NAMES[mode]).append(") ");
+        }
+        readBody();
+        this.in = null;
+        return notation.toString().trim();
+    }
+
+    // The problems found in the last file converted.
+    public List<String> errors() {
+        return errors;
+    }
+
+    // Returns the part of the Mass that the last file converted is (introit, and so on), as in
+    // chants.xml, or "other".
+    public String part() {
+        return part[1];
+    }
+
+    // Returns a name for the last file converted, in the form of the names in chants.xml: the part
+    // and the name in its header, such as Introit_Ad_te_levavi (or the name of file, if it has none).
+    public String chantName(File file) {
+        String title = name.isEmpty() ? file.getName().replaceFirst("\\.gabc$", "") : name;
+        //the accents are split off their letters, and left out with the punctuation
+        title = Normalizer.normalize(title, Normalizer.Form.NFD);
+        StringBuilder chantName = new StringBuilder(part[2]);
+        boolean wordStart = true;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                if (wordStart) {
+                    chantName.append('_');
+                    wordStart = false;
+                }
+                chantName.append(c);
+            } else if (c == ' ' || c == '_' || c == '-') {
+                wordStart = true;
+            }
+        }
+        return chantName.toString();
+    }
+
+    private int read() throws IOException {
+        int c = next;
+        if (c != -1) {
+            next = in.read();
+        }
+        return c;
+    }
+
+    // Reads the lines of the header up to the "%%" that ends it. A field ends at a ';' at the end of
+    // a line, so its value can go on over several lines.
+    private void readHeader() throws IOException {
+        StringBuilder line = new StringBuilder();
+        StringBuilder field = new StringBuilder();
+        while (next != -1) {
+            line.setLength(0);
+            while (next != -1 && next != '\n') {
+                line.append((char) read());
+            }
+            read(); //the '\n'
+            String trimmed = line.toString().trim();
+            if (trimmed.equals("%%")) {
+                return;
+            } else if (trimmed.startsWith("%")) {
+                continue; //a comment
+            }
+            field.append(trimmed).append(' ');
+            if (trimmed.endsWith(";")) {
+                readField(field.toString());
+                field.setLength(0);
+            }
+        }
+        errors.add("Error in GABC: there is no %% line between the header and the chant");
+    }
+
+    private void readField(String field) {
+        int colon = field.indexOf(':');
+        if (colon < 0) {
+            return;
+        }
+        String key = field.substring(0, colon).trim();
+        String value = field.substring(colon + 1).trim().replaceFirst(";+$", "").trim();
+        if (key.equals("name")) {
+            name = value;
+        } else if (key.equals("office-part")) {
+            for (String[] known : PARTS) {
+                if (known[0].equalsIgnoreCase(value)) {
+                    part = known;
+                }
+            }
+        } else if (key.equals("mode") && !value.isEmpty() && value.charAt(0) >= '1' && value.charAt(0) <= '8') {
+            mode = value.charAt(0) - '1'; //such as "8", or "6 T" for the tonus peregrinus
+        }
+    }
+
+    // Reads the chant, a syllable at a time, writing each to notation as soon as it is read.
+    private void readBody() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '%') {
+                while (next != -1 && next != '\n') {
+                    read(); //a comment
+                }
+            } else if (c == '(') {
+                notes.setLength(0);
+                while (next != -1 && next != ')') {
+                    notes.append((char) read());
+                }
+                read(); //the ')'
+                readNotes(next == -1 || Character.isWhitespace(next));
+                text.setLength(0);
+            } else if (Character.isWhitespace(c)) {
+                writeText(); //words with no notes, if there were any
+                flatPosition = -1; //a flat (or a natural) lasts to the end of its word
+                naturalPosition = -1;
+            } else if (c == '<') {
+                readTag();
+            } else if (c != '{' && c != '}') {
+                text.append((char) c);
+            }
+        }
+        writeText();
+    }
+
+    // Reads a tag in the text. Most (<i>, <b>, and so on) only change how the text looks, and are
+    // left out. A <sp> is a special character, such as the V/ before a verse, and the text of
+    // <v> (LaTeX) and of <alt> (printed above the staff) isn't part of the syllable.
+    private void readTag() throws IOException {
+        String tag = readUntil('>');
+        if (tag.equals("sp") || tag.equals("v") || tag.equals("alt")) {
+            String content = readUntil('<');
+            readUntil('>');
+            if (tag.equals("sp")) {
+                text.append(special(content));
+            }
+        }
+    }
+
+    // reads up to (and past) end, or up to the notes of the syllable, and returns what came before it
+    private String readUntil(char end) throws IOException {
+        StringBuilder read = new StringBuilder();
+        while (next != -1 && next != end && next != '(') {
+            read.append((char) read());
+        }
+        if (next == end) {
+            read();
+        }
+        return read.toString();
+    }
+
+    private static String special(String content) {
+        if (content.equals("V/")) {
+            return "\u2123";
+        } else if (content.equals("R/")) {
+            return "\u211f";
+        } else if (content.equals("+")) {
+            return "\u2020";
+        } else if (content.equals("'ae") || content.equals("'\u00e6")) {
+            return "\u01fd";
+        } else if (content.equals("ae")) {
+            return "\u00e6";
+        } else if (content.equals("'oe") || content.equals("'\u0153")) {
+            return "\u0153\u0301";
+        } else if (content.equals("oe")) {
+            return "\u0153";
+        }
+        return content;
+    }
+
+    // Converts what was between the ( and ) of a syllable. A clef or a bar among the notes ends the
+    // syllable (they are tokens of their own in the project's notation), and the notes after it go
+    // in a syllable with no text.
+    private void readNotes(boolean wordEnd) {
+        int length = notes.length();
+        int i = 0;
+        while (i < length) {
+            char c = notes.charAt(i);
+            if ((c == 'c' || c == 'f') && isClef(i)) {
+                i = readClef(i);
+            } else if (c == '`' || c == ',' || c == ';' || c == ':') {
+                i = readBar(i);
+            } else if ((c >= 'a' && c <= 'm') || (c >= 'A' && c <= 'M')) {
+                i = readNote(i);
+            } else if (c == '/' || c == ' ') {
+                writeNeume();
+                i++;
+            } else if (c == '[') {
+                while (i < length && notes.charAt(i) != ']') {
+                    i++; //such as [alt:...] or [ob:1;6mm], which are only about how the notes look
+                }
+                i++;
+            } else if ("!-@zZ+0123456789".indexOf(c) >= 0) {
+                i++; //a join, an initio debilis, a line break, a custos: only how the notes look
+            } else {
+                errors.add("Error in GABC: \"" + c + "\" in (" + notes + ") is not a note or mark this can read");
+                i++;
+            }
+        }
+        if (neumeLength > 0 || items.length() > 0) {
+            writeSyllable(wordEnd);
+        }
+    }
+
+    // whether the c or f at i is a clef, such as c4 or cb3, rather than a note
+    private boolean isClef(int i) {
+        if (i + 1 < notes.length() && notes.charAt(i + 1) == 'b') {
+            i++;
+        }
+        return i + 1 < notes.length() && notes.charAt(i + 1) >= '1' && notes.charAt(i + 1) <= '5';
+    }
+
+    private int readClef(int i) {
+        writeSyllable(true);
+        boolean doClef = notes.charAt(i) == 'c';
+        i++;
+        keyFlat = notes.charAt(i) == 'b';
+        if (keyFlat) {
+            i++; //the flat is written as te by each ti in the section (see readNote)
+        }
+        int line = notes.charAt(i) - '0';
+        //line 1 is the note d, and each line up is two notes higher; fa is three notes above do
+        int linePosition = 3 + 2 * (line - 1);
+        doPosition = doClef ? linePosition : linePosition - 3;
+        hasClef = true;
+        notation.append("CLEF(").append(doClef ? "do" : "fa").append(',').append(line).append(") ");
+        return i + 1;
+    }
+
+    private int readBar(int i) {
+        writeSyllable(true);
+        char c = notes.charAt(i);
+        String bar;
+        if (c == ':' && i + 1 < notes.length() && notes.charAt(i + 1) == ':') {
+            bar = "double";
+            i++;
+        } else if (c == ':') {
+            bar = "full";
+        } else if (c == ';') {
+            bar = "half";
+        } else {
+            bar = "quarter"; //a divisio minima, or a virgula
+        }
+        i++;
+        while (i < notes.length() && ((notes.charAt(i) >= '0' && notes.charAt(i) <= '9') || notes.charAt(i) == '?')) {
+            i++; //a different height, or an optional bar
+        }
+        notation.append("BAR(").append(bar).append(") ");
+        flatPosition = -1;
+        naturalPosition = -1;
+        return i;
+    }
+
+    // reads a note and the marks after it, and adds it to the neume; a note followed by x, y or #
+    // isn't a note but a flat, natural or sharp at that place on the staff
+    private int readNote(int i) {
+        int position = Character.toLowerCase(notes.charAt(i)) - 'a';
+        int degree = ((position - doPosition) % 7 + 7) % 7;
+        boolean flat = position == flatPosition || (keyFlat && degree == 6 && position != naturalPosition);
+        int noteMarks = flat ? FLAT : 0;
+        boolean isNote = true;
+        for (i++; i < notes.length(); i++) {
+            char c = notes.charAt(i);
+            if (c == 'x') {
+                flatPosition = position;
+                if (naturalPosition == position) {
+                    naturalPosition = -1;
+                }
+                isNote = false;
+            } else if (c == 'y') {
+                if (flatPosition == position) {
+                    flatPosition = -1;
+                }
+                naturalPosition = position;
+                addItem("neut");
+                isNote = false;
+            } else if (c == '#') {
+                isNote = false; //this notation has no sharps, and chant hardly ever needs one
+            } else if (c == '+') {
+                isNote = false; //a custos, which shows the first note of the next line
+            } else if (c == 'w' || c == 'W') {
+                noteMarks |= QUILISMA;
+            } else if (c == '~' || c == '<' || c == '>') {
+                noteMarks |= LIQUESCENT;
+            } else if (c == '.') {
+                noteMarks |= DOT;
+            } else if (c == '\'') {
+                noteMarks |= V_EPISEMA;
+            } else if (c == '_') {
+                noteMarks |= H_EPISEMA;
+            } else if ("vVsSoOrRqQ@0123456789".indexOf(c) < 0) {
+                break;
+            }
+        }
+        if (!isNote) {
+            return i;
+        }
+        if (!hasClef) {
+            errors.add("Error in GABC: a clef is needed before any notes");
+            hasClef = true; //only say so once
+        }
+        if (neumeLength == positions.length) {
+            positions = Arrays.copyOf(positions, neumeLength * 2);
+            marks = Arrays.copyOf(marks, neumeLength * 2);
+        }
+        positions[neumeLength] = position;
+        marks[neumeLength] = noteMarks;
+        neumeLength++;
+        return i;
+    }
+
+    // Adds the neume that has been read to the items of the syllable: the flag of its shape, if it
+    // has one, and then each note with its flags.
+    private void writeNeume() {
+        if (neumeLength == 0) {
+            return;
+        }
+        boolean ascending = true;
+        boolean quilisma = false;
+        for (int n = 0; n < neumeLength; n++) {
+            ascending &= n == 0 || positions[n] > positions[n - 1];
+            quilisma |= (marks[n] & QUILISMA) != 0;
+        }
+        if (neumeLength == 2 && positions[0] > positions[1]) {
+            addItem("cliv");
+        } else if (neumeLength == 3 && positions[0] < positions[1] && positions[1] > positions[2]) {
+            addItem("torc");
+        } else if (neumeLength == 3 && positions[0] > positions[1] && positions[1] < positions[2]) {
+            addItem("por");
+        } else if (neumeLength >= 3 && ascending && !quilisma) {
+            addItem("scand");
+        }
+        for (int n = 0; n < neumeLength; n++) {
+            if ((marks[n] & DOT) != 0) {
+                addItem("dot");
+            }
+            if ((marks[n] & QUILISMA) != 0) {
+                addItem("quil");
+            }
+            if ((marks[n] & LIQUESCENT) != 0) {
+                addItem("liq");
+            }
+            if ((marks[n] & V_EPISEMA) != 0) {
+                addItem("v_epi");
+            }
+            if ((marks[n] & H_EPISEMA) != 0) {
+                addItem("h_epi");
+            }
+            addItem(noteName(positions[n], (marks[n] & FLAT) != 0));
+        }
+        neumeLength = 0;
+    }
+
+    // the solfege name of a note in the current section, with an octave mark for each octave that
+    // it is above or below the octave that starts at do
+    private String noteName(int position, boolean flat) {
+        int steps = position - doPosition;
+        int octave = (steps >= 0) ? steps / 7 : -((6 - steps) / 7);
+        int degree = steps - octave * 7;
+        StringBuilder noteName = new StringBuilder((flat && degree == 6) ? "te" : NOTE_NAMES[degree]);
+        for (int o = 0; o < Math.abs(octave); o++) {
+            noteName.append(octave < 0 ? '-' : '+');
+        }
+        return noteName.toString();
+    }
+
+    private void addItem(String item) {
+        if (items.length() > 0) {
+            items.append(',');
+        }
+        items.append(item);
+    }
+
+    // Writes the syllable that has been read so far: its text (or "_", if the text has already been
+    // written, or it has none), with a '-' if the word goes on, and its items.
+    private void writeSyllable(boolean wordEnd) {
+        writeNeume();
+        if (items.length() == 0) {
+            writeText();
+            return;
+        }
+        notation.append(text.length() > 0 ? text : "_");
+        if (!wordEnd) {
+            notation.append('-');
+        }
+        notation.append('(').append(items).append(") ");
+        text.setLength(0);
+        items.setLength(0);
+    }
+
+    // writes text that has no notes, such as the * after the intonation, as a syllable of its own
+    private void writeText() {
+        if (text.length() > 0) {
+            notation.append(text).append(' ');
+            text.setLength(0);
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,226 @@
+package biagioli.brandon.mobilegraduale;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Works out which Sunday or feast of the liturgical year (of the Graduale's calendar) a date
+// belongs to, and so whose propers are sung that day. On a weekday without propers of its own,
+// the propers of the Sunday or feast before it are used, as they may be in a ferial Mass.
+//
+// Only the Proper of Time is followed; feasts of saints aren't. Most of the year hangs off two
+// dates: the First Sunday of Advent (the fourth Sunday before Christmas) and Easter (worked out
+// with the Gregorian computus). A date is placed by counting weeks from whichever of these it
+// follows, and the tables below give the celebration for each week, so finding a date's
+// celebration takes the same few steps for any date, with nothing to walk through.
+//
+// Dates are given as year, month (1 to 12) and day, in the Gregorian calendar.
+public final class LiturgicalCalendar {
+
+    public enum Season {ADVENT, CHRISTMAS, EPIPHANY, SEPTUAGESIMA, LENT, PASSIONTIDE, EASTER, PENTECOST}
+
+    public enum Celebration {
+        ADVENT_1(Season.ADVENT, "First Sunday in Advent"),
+        ADVENT_2(Season.ADVENT, "Second Sunday in Advent"),
+        ADVENT_3(Season.ADVENT, "Third Sunday in Advent"),
+        ADVENT_4(Season.ADVENT, "Fourth Sunday in Advent"),
+        CHRISTMAS(Season.CHRISTMAS, "The Nativity of Our Lord"),
+        SUNDAY_IN_CHRISTMAS_OCTAVE(Season.CHRISTMAS, "Sunday within the Octave of Christmas"),
+        CHRISTMAS_OCTAVE(Season.CHRISTMAS, "The Octave Day of Christmas"),
+        HOLY_NAME(Season.CHRISTMAS, "The Most Holy Name of Jesus"),
+        EPIPHANY(Season.EPIPHANY, "The Epiphany of Our Lord"),
+        HOLY_FAMILY(Season.EPIPHANY, "The Holy Family"),
+        EPIPHANY_2(Season.EPIPHANY, "Second Sunday after Epiphany"),
+        EPIPHANY_3(Season.EPIPHANY, "Third Sunday after Epiphany"),
+        EPIPHANY_4(Season.EPIPHANY, "Fourth Sunday after Epiphany"),
+        EPIPHANY_5(Season.EPIPHANY, "Fifth Sunday after Epiphany"),
+        EPIPHANY_6(Season.EPIPHANY, "Sixth Sunday after Epiphany"),
+        SEPTUAGESIMA(Season.SEPTUAGESIMA, "Septuagesima Sunday"),
+        SEXAGESIMA(Season.SEPTUAGESIMA, "Sexagesima Sunday"),
+        QUINQUAGESIMA(Season.SEPTUAGESIMA, "Quinquagesima Sunday"),
+        ASH_WEDNESDAY(Season.LENT, "Ash Wednesday"),
+        LENT_1(Season.LENT, "First Sunday in Lent"),
+        LENT_2(Season.LENT, "Second Sunday in Lent"),
+        LENT_3(Season.LENT, "Third Sunday in Lent"),
+        LENT_4(Season.LENT, "Fourth Sunday in Lent"),
+        PASSION_SUNDAY(Season.PASSIONTIDE, "Passion Sunday"),
+        PALM_SUNDAY(Season.PASSIONTIDE, "Palm Sunday"),
+        EASTER(Season.EASTER, "Easter Sunday"),
+        LOW_SUNDAY(Season.EASTER, "Low Sunday"),
+        EASTER_2(Season.EASTER, "Second Sunday after Easter"),
+        EASTER_3(Season.EASTER, "Third Sunday after Easter"),
+        EASTER_4(Season.EASTER, "Fourth Sunday after Easter"),
+        EASTER_5(Season.EASTER, "Fifth Sunday after Easter"),
+        ASCENSION(Season.EASTER, "The Ascension of Our Lord"),
+        SUNDAY_AFTER_ASCENSION(Season.EASTER, "Sunday after the Ascension"),
+        PENTECOST(Season.EASTER, "Pentecost Sunday"),
+        TRINITY(Season.PENTECOST, "The Most Holy Trinity"),
+        PENTECOST_2(Season.PENTECOST, "Second Sunday after Pentecost"),
+        PENTECOST_3(Season.PENTECOST, "Third Sunday after Pentecost"),
+        PENTECOST_4(Season.PENTECOST, "Fourth Sunday after Pentecost"),
+        PENTECOST_5(Season.PENTECOST, "Fifth Sunday after Pentecost"),
+        PENTECOST_6(Season.PENTECOST, "Sixth Sunday after Pentecost"),
+        PENTECOST_7(Season.PENTECOST, "Seventh Sunday after Pentecost"),
+        PENTECOST_8(Season.PENTECOST, "Eighth Sunday after Pentecost"),
+        PENTECOST_9(Season.PENTECOST, "Ninth Sunday after Pentecost"),
+        PENTECOST_10(Season.PENTECOST, "Tenth Sunday after Pentecost"),
+        PENTECOST_11(Season.PENTECOST, "Eleventh Sunday after Pentecost"),
+        PENTECOST_12(Season.PENTECOST, "Twelfth Sunday after Pentecost"),
+        PENTECOST_13(Season.PENTECOST, "Thirteenth Sunday after Pentecost"),
+        PENTECOST_14(Season.PENTECOST, "Fourteenth Sunday after Pentecost"),
+        PENTECOST_15(Season.PENTECOST, "Fifteenth Sunday after Pentecost"),
+        PENTECOST_16(Season.PENTECOST, "Sixteenth Sunday after Pentecost"),
+        PENTECOST_17(Season.PENTECOST, "Seventeenth Sunday after Pentecost"),
+        PENTECOST_18(Season.PENTECOST, "Eighteenth Sunday after Pentecost"),
+        PENTECOST_19(Season.PENTECOST, "Nineteenth Sunday after Pentecost"),
+        PENTECOST_20(Season.PENTECOST, "Twentieth Sunday after Pentecost"),
+        PENTECOST_21(Season.PENTECOST, "Twenty-first Sunday after Pentecost"),
+        PENTECOST_22(Season.PENTECOST, "Twenty-second Sunday after Pentecost"),
+        PENTECOST_23(Season.PENTECOST, "Twenty-third Sunday after Pentecost"),
+        PENTECOST_24(Season.PENTECOST, "Twenty-fourth and Last Sunday after Pentecost");
+
+        public final Season season;
+        public final String title; //the name of the day, for showing to the user
+
+        Celebration(Season season, String title) {
+            this.season = season;
+            this.title = title;
+        }
+    }
+
+    //the celebration of each week counted from an anchor date (see celebrationOn)
+    private static final Celebration[] ADVENT = {Celebration.ADVENT_1, Celebration.ADVENT_2,
+            Celebration.ADVENT_3, Celebration.ADVENT_4};
+    private static final Celebration[] AFTER_EPIPHANY = {Celebration.HOLY_FAMILY, Celebration.EPIPHANY_2,
+            Celebration.EPIPHANY_3, Celebration.EPIPHANY_4, Celebration.EPIPHANY_5, Celebration.EPIPHANY_6};
+    private static final Celebration[] BEFORE_EASTER = {Celebration.SEPTUAGESIMA, Celebration.SEXAGESIMA,
+            Celebration.QUINQUAGESIMA, Celebration.LENT_1, Celebration.LENT_2, Celebration.LENT_3,
+            Celebration.LENT_4, Celebration.PASSION_SUNDAY, Celebration.PALM_SUNDAY};
+    private static final Celebration[] AFTER_EASTER = {Celebration.EASTER, Celebration.LOW_SUNDAY,
+            Celebration.EASTER_2, Celebration.EASTER_3, Celebration.EASTER_4, Celebration.EASTER_5,
+            Celebration.SUNDAY_AFTER_ASCENSION, Celebration.PENTECOST, Celebration.TRINITY,
+            Celebration.PENTECOST_2, Celebration.PENTECOST_3, Celebration.PENTECOST_4, Celebration.PENTECOST_5,
+            Celebration.PENTECOST_6, Celebration.PENTECOST_7, Celebration.PENTECOST_8, Celebration.PENTECOST_9,
+            Celebration.PENTECOST_10, Celebration.PENTECOST_11, Celebration.PENTECOST_12,
+            Celebration.PENTECOST_13, Celebration.PENTECOST_14, Celebration.PENTECOST_15,
+            Celebration.PENTECOST_16, Celebration.PENTECOST_17, Celebration.PENTECOST_18,
+            Celebration.PENTECOST_19, Celebration.PENTECOST_20, Celebration.PENTECOST_21,
+            Celebration.PENTECOST_22, Celebration.PENTECOST_23};
+    private static final int TRINITY_WEEK = 8; //the index of TRINITY in AFTER_EASTER
+
+    private static final int SEPTUAGESIMA_DAYS = 63; //days from Septuagesima to Easter
+    private static final int ASH_WEDNESDAY_DAYS = 46; //days from Ash Wednesday to Easter
+    private static final int ASCENSION_DAYS = 39; //days from Easter to the Ascension
+    private static final int SUNDAY_AFTER_ASCENSION_DAYS = 42;
+
+    private LiturgicalCalendar() {
+    }
+
+    // Returns the celebration whose propers are sung on the given date.
+    public static Celebration celebrationOn(int year, int month, int day) {
+        int date = dayNumber(year, month, day);
+        int christmas = dayNumber(year, 12, 25);
+        int advent = firstSundayOfAdvent(year);
+
+        //Advent, and Christmas up to the end of the year
+        if (date >= advent && date < christmas) {
+            return ADVENT[(date - advent) / 7];
+        } else if (date >= christmas) {
+            int sunday = sundayOnOrAfter(christmas + 1);
+            if (sunday <= dayNumber(year, 12, 31) && date >= sunday) {
+                return Celebration.SUNDAY_IN_CHRISTMAS_OCTAVE;
+            }
+            return Celebration.CHRISTMAS;
+        }
+
+        //Christmastide and Epiphany, in January
+        int epiphany = dayNumber(year, 1, 6);
+        if (date < epiphany) {
+            //the Holy Name is kept on the Sunday between the 2nd and 5th of January, or on the 2nd
+            int holyName = sundayOnOrAfter(dayNumber(year, 1, 2));
+            if (holyName >= epiphany) {
+                holyName = dayNumber(year, 1, 2);
+            }
+            return (date >= holyName) ? Celebration.HOLY_NAME : Celebration.CHRISTMAS_OCTAVE;
+        }
+        int holyFamily = sundayOnOrAfter(epiphany + 1);
+        int easter = easter(year);
+        int septuagesima = easter - SEPTUAGESIMA_DAYS;
+        if (date < holyFamily) {
+            return Celebration.EPIPHANY;
+        } else if (date < septuagesima) {
+            return AFTER_EPIPHANY[(date - holyFamily) / 7];
+        }
+
+        //from Septuagesima to Easter
+        if (date < easter) {
+            int ashWednesday = easter - ASH_WEDNESDAY_DAYS;
+            if (date >= ashWednesday && date < ashWednesday + 4) {
+                return Celebration.ASH_WEDNESDAY; //(and the days after it, until the First Sunday in Lent)
+            }
+            return BEFORE_EASTER[(date - septuagesima) / 7];
+        }
+
+        //from Easter to Advent
+        int week = (date - easter) / 7;
+        if (date >= easter + ASCENSION_DAYS && date < easter + SUNDAY_AFTER_ASCENSION_DAYS) {
+            return Celebration.ASCENSION;
+        }
+        if (week < AFTER_EASTER.length && date < advent - 7) {
+            return AFTER_EASTER[week];
+        }
+        if (date >= advent - 7) {
+            return Celebration.PENTECOST_24; //always the last Sunday before Advent
+        }
+        //In a year with more than 24 Sundays after Pentecost, the Sundays between the 23rd and the
+        //last are the Sundays after Epiphany that Septuagesima came too early for, ending with the
+        //sixth.
+        int sundaysAfterPentecost = (advent - 7 - easter) / 7 - TRINITY_WEEK + 1;
+        int extra = sundaysAfterPentecost - 24;
+        int sundayAfterPentecost = week - TRINITY_WEEK + 1;
+        return AFTER_EPIPHANY[6 - extra + (sundayAfterPentecost - 23) - 1];
+    }
+
+    // Returns the date of the First Sunday of Advent in the given year, as a day number.
+    protected static int firstSundayOfAdvent(int year) {
+        int christmas = dayNumber(year, 12, 25);
+        //the Fourth Sunday of Advent is the last Sunday before Christmas
+        return sundayOnOrAfter(christmas - 7) - 21;
+    }
+
+    // Returns the date of Easter in the given year, as a day number (the "anonymous Gregorian
+    // algorithm", from Meeus).
+    protected static int easter(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = (h + l - 7 * m + 114) % 31 + 1;
+        return dayNumber(year, month, day);
+    }
+
+    // Returns the number of days from 1 January 1970 to the given date (negative before it).
+    protected static int dayNumber(int year, int month, int day) {
+        //count years from March, so that the leap day comes at the end of the year
+        int y = (month <= 2) ? year - 1 : year;
+        int era = ((y >= 0) ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * ((month > 2) ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // the first Sunday on or after a day number
+    protected static int sundayOnOrAfter(int date) {
+        int dayOfWeek = ((date + 4) % 7 + 7) % 7; //0 for Sunday; 1 January 1970 was a Thursday
+        return (dayOfWeek == 0) ? date : date + 7 - dayOfWeek;
+    }
+}
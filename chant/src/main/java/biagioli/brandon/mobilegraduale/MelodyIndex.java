@@ -0,0 +1,323 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import biagioli.brandon.mobilegraduale.Chant.Mode;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// An index of the melodies of the chants, for finding every chant that has some melodic figure in
+// it, at any pitch. A melody is kept as the intervals between its notes, in steps of the staff (a
+// line to the next space is one step), so a figure is found wherever it's sung, whatever note it
+// starts on. Bar lines aren't notes, and the melody is broken at each clef, since the same place on
+// the staff is a different note after a new clef.
+//
+// Every interval starts a gram: it and the two intervals after it (or fewer, at the end of a
+// melody), packed into a number (see gram). The places of the grams are sorted by gram, so the
+// grams that start with some one or two intervals have consecutive numbers too. A figure of three
+// or more intervals is found by looking up its rarest gram, and checking the rest of the figure
+// at each place that gram is found; a shorter figure is a range of grams.
+//
+// The index is made by ChantCompiler along with chants.bin, and saved as melody.bin:
+//   int MAGIC, short VERSION, int chant count,
+//   for each chant: UTF name, byte mode (-1 if there isn't one), int interval count, the intervals
+//   (a byte each, with BREAK between the melodies of different clefs)
+// The grams are worked out again when the index is read; that only takes a pass over the intervals.
+public class MelodyIndex {
+    public static final String ASSET_NAME = "melody.bin";
+    protected static final byte BREAK = Byte.MIN_VALUE; //between the melodies of different clefs
+
+    protected static final int GRAM_LENGTH = 3; //intervals per gram
+    private static final int GRAM_BITS = 5; //bits per interval in a gram
+    private static final int MAX_GRAM_INTERVAL = 15; //larger intervals share a gram with 15 steps
+    private static final int GRAM_COUNT = 1 << (GRAM_BITS * GRAM_LENGTH);
+
+    private static final int MAGIC = 0x4D474D45; // "MGME"
+    private static final short VERSION = 1;
+
+    protected final String[] names; //the name of each chant (its <chant> in chants.xml)
+    protected final Mode[] modes; //the mode of each chant; null if it doesn't have one
+    protected final int[] intervalStart; //where each chant's intervals start; one more entry than chants
+    protected final byte[] intervals; //the intervals of every chant, one after the other
+    protected final int[] gramStart; //where the places of each gram start in places; GRAM_COUNT + 1 entries
+    protected final int[] places; //the index in intervals of each place a gram starts, sorted by gram
+
+    protected MelodyIndex(String[] names, Mode[] modes, int[] intervalStart, byte[] intervals) {
+        this.names = names;
+        this.modes = modes;
+        this.intervalStart = intervalStart;
+        this.intervals = intervals;
+
+        //count the places of each gram, and then fill them in (a counting sort)
+        int[] grams = new int[intervals.length];
+        gramStart = new int[GRAM_COUNT + 1];
+        int placeCount = 0;
+        for (int c = 0; c < names.length; c++) {
+            for (int i = intervalStart[c]; i < intervalStart[c + 1]; i++) {
+                if (intervals[i] != BREAK) {
+                    grams[i] = gramAt(intervals, i, intervalStart[c + 1]);
+                    gramStart[grams[i] + 1]++;
+                    placeCount++;
+                }
+            }
+        }
+        for (int g = 0; g < GRAM_COUNT; g++) {
+            gramStart[g + 1] += gramStart[g];
+        }
+        places = new int[placeCount];
+        int[] next = Arrays.copyOf(gramStart, GRAM_COUNT);
+        for (int i = 0; i < intervals.length; i++) {
+            if (intervals[i] != BREAK) {
+                places[next[grams[i]]++] = i;
+            }
+        }
+    }
+
+    // Makes the index of the given chants, which have the given names.
+    public static MelodyIndex build(List<String> names, List<Chant> chants) {
+        Mode[] modes = new Mode[chants.size()];
+        int[] intervalStart = new int[chants.size() + 1];
+        byte[] intervals = new byte[64];
+        int count = 0;
+        for (int c = 0; c < chants.size(); c++) {
+            Chant chant = chants.get(c);
+            modes[c] = chant.mode;
+            float previous = Float.NaN; //the last note, if there is one since the last clef
+            for (int s = 0; s < chant.sectionCount; s++) {
+                if (!Float.isNaN(previous)) {
+                    intervals = grow(intervals, count + 1);
+                    intervals[count++] = BREAK;
+                    previous = Float.NaN;
+                }
+                int first = chant.syllableNoteStart[chant.sectionStart[s]];
+                int end = chant.syllableNoteStart[chant.sectionStart[s + 1]];
+                for (int n = first; n < end; n++) {
+                    if ((chant.noteFlags[n] & Chant.BAR_FLAGS) != 0) {
+                        continue;
+                    }
+                    if (!Float.isNaN(previous)) {
+                        intervals = grow(intervals, count + 1);
+                        intervals[count++] = (byte) step(chant.noteValue[n] - previous);
+                    }
+                    previous = chant.noteValue[n];
+                }
+            }
+            intervalStart[c + 1] = count;
+        }
+        return new MelodyIndex(names.toArray(new String[names.size()]), modes, intervalStart,
+                Arrays.copyOf(intervals, count));
+    }
+
+    private static byte[] grow(byte[] array, int size) {
+        return (size <= array.length) ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    // the number of steps between two notes, from the difference of their values (every note value
+    // is a multiple of 0.5, which is one step), kept within what fits in a byte
+    private static int step(float difference) {
+        int step = Math.round(difference * 2);
+        return (step < -127) ? -127 : (step > 127) ? 127 : step;
+    }
+
+    // Returns the intervals between the given note values (as used in Chant), for search().
+    public static int[] intervalsOf(float[] noteValues) {
+        int[] intervals = new int[Math.max(noteValues.length - 1, 0)];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = step(noteValues[i + 1] - noteValues[i]);
+        }
+        return intervals;
+    }
+
+    // the gram number of an interval (1 to 31; 0 is for no interval, after the end of a melody)
+    private static int gramCode(int interval) {
+        int clamped = (interval < -MAX_GRAM_INTERVAL) ? -MAX_GRAM_INTERVAL :
+                (interval > MAX_GRAM_INTERVAL) ? MAX_GRAM_INTERVAL : interval;
+        return clamped + MAX_GRAM_INTERVAL + 1;
+    }
+
+    // the gram that starts at intervals[i], which is not a BREAK; the chant's intervals end at end
+    private static int gramAt(byte[] intervals, int i, int end) {
+        int gram = 0;
+        boolean ended = false; //whether the melody ended before this interval of the gram
+        for (int k = 0; k < GRAM_LENGTH; k++) {
+            ended |= i + k >= end || intervals[i + k] == BREAK;
+            gram = (gram << GRAM_BITS) | (ended ? 0 : gramCode(intervals[i + k]));
+        }
+        return gram;
+    }
+
+    public int chantCount() {
+        return names.length;
+    }
+
+    public String name(int chant) {
+        return names[chant];
+    }
+
+    public Mode mode(int chant) {
+        return modes[chant];
+    }
+
+    // Returns the chants (by their number in the index, in order) that have the given intervals,
+    // one after the other, anywhere in their melody. If mode isn't null, only the chants in that
+    // mode are returned.
+    public int[] search(int[] figure, Mode mode) {
+        if (figure.length == 0) {
+            return new int[0];
+        }
+        for (int interval : figure) {
+            if (interval < -127 || interval > 127) {
+                return new int[0]; //not an interval that any chant has
+            }
+        }
+
+        //the places to check: those of the rarest gram of the figure, or for a short figure, those
+        //of every gram that starts with it
+        int offset = 0; //where in the figure the gram that is looked up starts
+        int low;
+        int high;
+        if (figure.length < GRAM_LENGTH) {
+            int shift = GRAM_BITS * (GRAM_LENGTH - figure.length);
+            int prefix = 0;
+            for (int interval : figure) {
+                prefix = (prefix << GRAM_BITS) | gramCode(interval);
+            }
+            low = gramStart[prefix << shift];
+            high = gramStart[(prefix + 1) << shift];
+        } else {
+            low = 0;
+            high = Integer.MAX_VALUE;
+            for (int k = 0; k + GRAM_LENGTH <= figure.length; k++) {
+                int gram = 0;
+                for (int j = 0; j < GRAM_LENGTH; j++) {
+                    gram = (gram << GRAM_BITS) | gramCode(figure[k + j]);
+                }
+                if (gramStart[gram + 1] - gramStart[gram] < high - low) {
+                    low = gramStart[gram];
+                    high = gramStart[gram + 1];
+                    offset = k;
+                }
+            }
+        }
+
+        boolean[] found = new boolean[names.length];
+        int foundCount = 0;
+        for (int p = low; p < high; p++) {
+            int start = places[p] - offset;
+            int chant = chantOf(places[p]);
+            if (found[chant] || (mode != null && modes[chant] != mode)) {
+                continue;
+            }
+            if (start < intervalStart[chant] || start + figure.length > intervalStart[chant + 1]) {
+                continue;
+            }
+            boolean matches = true;
+            for (int k = 0; k < figure.length && matches; k++) {
+                matches = intervals[start + k] == figure[k]; //(a BREAK never matches)
+            }
+            if (matches) {
+                found[chant] = true;
+                foundCount++;
+            }
+        }
+
+        int[] results = new int[foundCount];
+        for (int c = 0, r = 0; c < names.length; c++) {
+            if (found[c]) {
+                results[r++] = c;
+            }
+        }
+        return results;
+    }
+
+    // the chant that intervals[i] belongs to
+    private int chantOf(int i) {
+        int low = 0;
+        int high = names.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (intervalStart[middle] > i) {
+                high = middle - 1;
+            } else {
+                low = middle;
+            }
+        }
+        return low;
+    }
+
+    // Writes the index to out, as melody.bin.
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(names.length);
+        for (int c = 0; c < names.length; c++) {
+            data.writeUTF(names[c]);
+            data.writeByte(modes[c] == null ? -1 : modes[c].ordinal());
+            data.writeInt(intervalStart[c + 1] - intervalStart[c]);
+            data.write(intervals, intervalStart[c], intervalStart[c + 1] - intervalStart[c]);
+        }
+        data.flush();
+    }
+
+    // Reads an index written by write().
+    public static MelodyIndex read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readShort() != VERSION) {
+            throw new IOException("Not a melody index, or made by a different version");
+        }
+        int chantCount = data.readInt();
+        String[] names = new String[chantCount];
+        Mode[] modes = new Mode[chantCount];
+        int[] intervalStart = new int[chantCount + 1];
+        byte[] intervals = new byte[0];
+        for (int c = 0; c < chantCount; c++) {
+            names[c] = data.readUTF();
+            int mode = data.readByte();
+            modes[c] = mode < 0 ? null : Mode.values()[mode];
+            int count = data.readInt();
+            intervalStart[c + 1] = intervalStart[c] + count;
+            intervals = grow(intervals, intervalStart[c + 1]);
+            data.readFully(intervals, intervalStart[c], count);
+        }
+        return new MelodyIndex(names, modes, intervalStart, Arrays.copyOf(intervals, intervalStart[chantCount]));
+    }
+
+    // Searches a melody.bin from the command line (see searchMelody in app/build.gradle).
+    // args: the melody.bin, the intervals of the figure separated by commas (such as 1,1,-2 for do
+    // re mi do), and optionally a mode (such as EIGHT)
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: MelodyIndex <melody.bin> <intervals, such as 1,1,-2> [mode]");
+            System.exit(2);
+        }
+        MelodyIndex index;
+        InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            index = read(in);
+        } finally {
+            in.close();
+        }
+        String[] steps = args[1].split(",");
+        int[] figure = new int[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            figure[i] = Integer.parseInt(steps[i].trim().replace("+", ""));
+        }
+        Mode mode = (args.length == 3) ? Mode.valueOf(args[2].toUpperCase()) : null;
+
+        int[] results = index.search(figure, mode);
+        for (int chant : results) {
+            System.out.println(index.name(chant) + " (mode " + index.mode(chant) + ")");
+        }
+        System.out.println(results.length + " of " + index.chantCount() + " chants");
+    }
+}
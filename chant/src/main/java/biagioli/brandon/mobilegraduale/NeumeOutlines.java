@@ -0,0 +1,175 @@
+package biagioli.brandon.mobilegraduale;
+
+import static biagioli.brandon.mobilegraduale.ChantGeometry.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// The outlines of the notes and clefs, in the units of ChantGeometry. These used to be built straight
+// into android Paths in NeumeGlyphs; they are described here instead, one command at a time, so that
+// the same shapes can be built into a Path in the app, and into SVG or PDF paths by ChantExporter.
+//
+// The commands are those of android.graphics.Path, so an arc is an oval's bounds, a start angle and
+// a sweep, in degrees clockwise from the right, joined to the end of the outline so far by a line.
+// Formats without arcs like that can extend CurveOutline, which turns them into Bezier curves.
+public final class NeumeOutlines {
+
+    // Receives the commands that describe an outline.
+    public interface Outline {
+        void moveTo(float x, float y);
+
+        void lineTo(float x, float y);
+
+        void arcTo(float left, float top, float right, float bottom, float startAngle, float sweepAngle);
+
+        void close();
+    }
+
+    // An Outline that draws each arc as cubic Bezier curves, at most a quarter of a circle each.
+    public abstract static class CurveOutline implements Outline {
+
+        // a cubic Bezier curve from the end of the outline so far to (x, y)
+        protected abstract void curveTo(float x1, float y1, float x2, float y2, float x, float y);
+
+        @Override
+        public void arcTo(float left, float top, float right, float bottom, float startAngle, float sweepAngle) {
+            float cx = (left + right) / 2;
+            float cy = (top + bottom) / 2;
+            float rx = (right - left) / 2;
+            float ry = (bottom - top) / 2;
+            int segments = Math.max(1, (int) Math.ceil(Math.abs(sweepAngle) / 90 - 0.001));
+            double step = Math.toRadians(sweepAngle) / segments;
+            double k = 4.0 / 3 * Math.tan(step / 4); //how far the control points are along the tangents
+
+            double angle = Math.toRadians(startAngle);
+            lineTo((float) (cx + rx * Math.cos(angle)), (float) (cy + ry * Math.sin(angle)));
+            for (int i = 0; i < segments; i++) {
+                double end = angle + step;
+                double cos1 = Math.cos(angle);
+                double sin1 = Math.sin(angle);
+                double cos2 = Math.cos(end);
+                double sin2 = Math.sin(end);
+                curveTo((float) (cx + rx * (cos1 - k * sin1)), (float) (cy + ry * (sin1 + k * cos1)),
+                        (float) (cx + rx * (cos2 + k * sin2)), (float) (cy + ry * (sin2 - k * cos2)),
+                        (float) (cx + rx * cos2), (float) (cy + ry * sin2));
+                angle = end;
+            }
+        }
+    }
+
+    private NeumeOutlines() {
+    }
+
+    // Describes one of the glyphs of ChantCanvas (PUNCTUM and so on), with its origin where the
+    // canvas's origin is when the glyph is drawn.
+    public static void outline(int glyph, Outline path) {
+        switch (glyph) {
+            case ChantCanvas.PUNCTUM:
+                //a punctum, which looks like a small arched rectangle
+                path.moveTo(0, 0);
+                path.arcTo(10 - 10 * SQRT_TWO, 10 - 10 * SQRT_TWO,
+                        10 + 10 * SQRT_TWO, 10 + 10 * SQRT_TWO, 225, 90);
+                path.lineTo(20, 20);
+                path.arcTo(10 - 10 * SQRT_TWO, 30 - 10 * SQRT_TWO,
+                        10 + 10 * SQRT_TWO, 30 + 10 * SQRT_TWO, 315, -90);
+                path.lineTo(0, 0);
+                break;
+            case ChantCanvas.QUILISMA:
+                //a quilisma (that is, just the jagged punctum)
+                path.moveTo(0,30);
+                path.lineTo(0,-5);
+                path.lineTo(5,10);
+                path.lineTo(5,-5);
+                path.lineTo(10,10);
+                path.lineTo(10,-5);
+                path.lineTo(15,10);
+                path.lineTo(15,-5);
+                path.lineTo(18,4);
+                path.lineTo(20,-10);
+                path.lineTo(20,25);
+                path.lineTo(15,10);
+                path.lineTo(15,25);
+                path.lineTo(10,10);
+                path.lineTo(10,25);
+                path.lineTo(5,10);
+                path.lineTo(5,25);
+                path.lineTo(2,16);
+                path.lineTo(0,30);
+                path.close();
+                break;
+            case ChantCanvas.RHOMBUS:
+                //a small rhombus
+                path.moveTo(10,-5);
+                path.lineTo(20,10);
+                path.lineTo(10,25);
+                path.lineTo(0,10);
+                path.close();
+                break;
+            case ChantCanvas.DO_CLEF:
+                //the do clef, centered on the line it marks
+                //upper part of the do clef
+                path.moveTo(10 + 5*SQRT_TWO, -20 - 5*SQRT_TWO);
+                path.lineTo(10 + 5*SQRT_TWO, - 5*SQRT_TWO);
+                path.arcTo(0,-10,20,10,315,-135);
+                path.lineTo(0, -20);
+                path.arcTo(0,-30,20,-10,180,135);
+                path.close();
+                //lower part of the do clef
+                path.moveTo(10 + 5*SQRT_TWO, 20 + 5*SQRT_TWO);
+                path.lineTo(10 + 5*SQRT_TWO, 5*SQRT_TWO);
+                path.arcTo(0,-10,20,10,45,135);
+                path.lineTo(0, 0);
+                path.arcTo(0,10,20,30,180,-135);
+                path.close();
+                break;
+            default:
+                throw new IllegalArgumentException("No glyph " + glyph);
+        }
+    }
+
+    // Describes the diagonal brush-stroke from the first note of a porrectus (which is drop staff
+    // spaces below the second note, or above it if drop is negative) to the second note.
+    public static void porrectus(float drop, Outline path) {
+        path.moveTo(-50, drop * STAFF_SPACE);
+        path.lineTo(20,0);
+        path.lineTo(20,20);
+        path.lineTo(-50, drop * STAFF_SPACE + 20);
+        path.lineTo(-50, drop * STAFF_SPACE);
+        path.close();
+    }
+
+    // The box that a glyph's outline fits in, as {left, top, right, bottom}.
+    public static float[] bounds(int glyph) {
+        final float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        outline(glyph, new CurveOutline() {
+            @Override
+            public void moveTo(float x, float y) {
+                add(x, y);
+            }
+
+            @Override
+            public void lineTo(float x, float y) {
+                add(x, y);
+            }
+
+            @Override
+            protected void curveTo(float x1, float y1, float x2, float y2, float x, float y) {
+                add(x1, y1); //(a curve stays inside its control points)
+                add(x2, y2);
+                add(x, y);
+            }
+
+            @Override
+            public void close() {
+            }
+
+            private void add(float x, float y) {
+                bounds[0] = Math.min(bounds[0], x);
+                bounds[1] = Math.min(bounds[1], y);
+                bounds[2] = Math.max(bounds[2], x);
+                bounds[3] = Math.max(bounds[3], y);
+            }
+        });
+        return bounds;
+    }
+}
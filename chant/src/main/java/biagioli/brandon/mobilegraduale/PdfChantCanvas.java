@@ -0,0 +1,153 @@
+package biagioli.brandon.mobilegraduale;
+
+import static biagioli.brandon.mobilegraduale.ChantExporter.appendNumber;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// A ChantCanvas that writes what is drawn as the operators of a PDF content stream (see
+// ChantExporter, which puts them on pages, and PdfWriter). The canvas's saves, restores, translations
+// and scales are PDF's own q, Q and cm, so the operators are written exactly as they come.
+//
+// The content is drawn the way the app draws it, with y going down the page; the page flips it
+// over first. The glyphs are Form XObjects named /G0, /G1 and so on, and the text is in /F1
+// (Helvetica), which the page's resources have to supply.
+public class PdfChantCanvas implements ChantCanvas {
+    private static final String[] LINE_WIDTHS = {"1 w ", "2 w ", "1 w ", "4 w ", "1 w "}; //of each paint
+    private static final int[] TEXT_SIZES = {60, 60, 60, 60, 40};
+
+    protected final StringBuilder out;
+
+    // The operators are appended to out.
+    public PdfChantCanvas(StringBuilder out) {
+        this.out = out;
+    }
+
+    @Override
+    public void save() {
+        out.append("q\n");
+    }
+
+    @Override
+    public void restore() {
+        out.append("Q\n");
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        out.append("1 0 0 1 ");
+        appendNumber(out, dx);
+        out.append(' ');
+        appendNumber(out, dy);
+        out.append(" cm\n");
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+        appendNumber(out, sx);
+        out.append(" 0 0 ");
+        appendNumber(out, sy);
+        out.append(" 0 0 cm\n");
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        out.append(LINE_WIDTHS[paint]);
+        point(startX, startY);
+        out.append(" m ");
+        point(stopX, stopY);
+        out.append(" l S\n");
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, int paint) {
+        PathOperators path = new PathOperators(out);
+        path.moveTo(cx + radius, cy);
+        path.arcTo(cx - radius, cy - radius, cx + radius, cy + radius, 0, 360);
+        path.close();
+        out.append("f\n");
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, int paint) {
+        point(left, top);
+        out.append(' ');
+        point(right - left, bottom - top);
+        out.append(" re f\n");
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, int paint) {
+        if (paint == ERROR_PAINT) {
+            out.append("q 1 0 0 rg ");
+        }
+        //the text is flipped back over, so that it isn't upside down on the flipped page
+        out.append("BT /F1 ").append(TEXT_SIZES[paint]).append(" Tf 1 0 0 -1 ");
+        point(x, y);
+        out.append(" Tm ");
+        ChantExporter.appendPdfString(out, text);
+        out.append(" Tj ET\n");
+        if (paint == ERROR_PAINT) {
+            out.append("Q\n");
+        }
+    }
+
+    @Override
+    public void drawGlyph(int glyph) {
+        out.append("/G").append(glyph).append(" Do\n");
+    }
+
+    @Override
+    public void drawPorrectus(float drop) {
+        NeumeOutlines.porrectus(drop, new PathOperators(out));
+        out.append("f\n");
+    }
+
+    private void point(float x, float y) {
+        appendNumber(out, x);
+        out.append(' ');
+        appendNumber(out, y);
+    }
+
+    // Writes an outline as PDF path operators; it still has to be filled (f) afterwards.
+    protected static class PathOperators extends NeumeOutlines.CurveOutline {
+        private final StringBuilder out;
+
+        protected PathOperators(StringBuilder out) {
+            this.out = out;
+        }
+
+        @Override
+        public void moveTo(float x, float y) {
+            point(x, y);
+            out.append(" m\n");
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            point(x, y);
+            out.append(" l\n");
+        }
+
+        @Override
+        protected void curveTo(float x1, float y1, float x2, float y2, float x, float y) {
+            point(x1, y1);
+            out.append(' ');
+            point(x2, y2);
+            out.append(' ');
+            point(x, y);
+            out.append(" c\n");
+        }
+
+        @Override
+        public void close() {
+            out.append("h\n");
+        }
+
+        private void point(float x, float y) {
+            appendNumber(out, x);
+            out.append(' ');
+            appendNumber(out, y);
+        }
+    }
+}
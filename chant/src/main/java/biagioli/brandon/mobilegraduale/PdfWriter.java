@@ -0,0 +1,120 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Writes the objects of a PDF file, one at a time, straight to an OutputStream, keeping only where
+// each object starts (for the cross-reference table at the end). This is just enough of PDF for
+// ChantExporter's booklets: dictionaries are written as text, and streams are compressed.
+//
+// An object that refers to objects written after it (the page tree refers to every page) can
+// reserve its number first, and be written once the others are.
+public class PdfWriter {
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    protected final CountingStream out;
+    protected long[] offsets = new long[16]; //where each object starts; object 0 is never used
+    protected int objectCount = 1;
+
+    // Counts the bytes written, so that the offsets of the objects are known.
+    protected static class CountingStream extends FilterOutputStream {
+        protected long count;
+
+        protected CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    public PdfWriter(OutputStream out) throws IOException {
+        this.out = new CountingStream(out);
+        //the second line tells programs that look for binary data that there is some
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+    }
+
+    // Returns the number of a new object, to be written later with object() or stream().
+    public int reserve() {
+        if (objectCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, objectCount * 2);
+        }
+        return objectCount++;
+    }
+
+    // Writes an object that is just a dictionary (or any other value), returning its number.
+    public int object(String value) throws IOException {
+        return object(reserve(), value);
+    }
+
+    public int object(int number, String value) throws IOException {
+        begin(number);
+        write(value);
+        write("\nendobj\n");
+        return number;
+    }
+
+    // Writes a stream, compressed, with the entries of dictionary (which has no << >> around it)
+    // added to its dictionary. Returns its number.
+    public int stream(String dictionary, byte[] data) throws IOException {
+        int number = reserve();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 16);
+        DeflaterOutputStream deflated = new DeflaterOutputStream(compressed, deflater);
+        deflated.write(data);
+        deflated.close();
+        deflater.end();
+
+        begin(number);
+        write("<< " + dictionary + " /Filter /FlateDecode /Length " + compressed.size() + " >>\nstream\n");
+        compressed.writeTo(out);
+        write("\nendstream\nendobj\n");
+        return number;
+    }
+
+    // Writes the cross-reference table and the trailer, which says where to start (catalog is the
+    // document catalog), and flushes everything out. Nothing can be written after this.
+    public void finish(int catalog) throws IOException {
+        long start = out.count;
+        StringBuilder xref = new StringBuilder(objectCount * 20 + 64);
+        xref.append("xref\n0 ").append(objectCount).append("\n0000000000 65535 f \n");
+        for (int i = 1; i < objectCount; i++) {
+            String offset = Long.toString(offsets[i]);
+            for (int pad = offset.length(); pad < 10; pad++) {
+                xref.append('0');
+            }
+            xref.append(offset).append(" 00000 n \n");
+        }
+        xref.append("trailer\n<< /Size ").append(objectCount).append(" /Root ").append(catalog)
+                .append(" 0 R >>\nstartxref\n").append(start).append("\n%%EOF\n");
+        write(xref.toString());
+        out.flush();
+    }
+
+    private void begin(int number) throws IOException {
+        offsets[number] = out.count;
+        write(number + " 0 obj\n");
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(LATIN_1));
+    }
+}
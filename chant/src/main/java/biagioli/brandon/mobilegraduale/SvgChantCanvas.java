@@ -0,0 +1,272 @@
+package biagioli.brandon.mobilegraduale;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import static biagioli.brandon.mobilegraduale.ChantExporter.appendNumber;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// A ChantCanvas that writes an SVG picture of what is drawn, an element at a time, to a PrintWriter
+// (see ChantExporter). Nothing is kept but the current transformation, so a chant of any length
+// is written in the same small amount of memory.
+//
+// The glyphs are written once, as <defs>, and each note uses one of them. Only translations and
+// scales are ever applied to the canvas, so the transformation is just a scale and an offset, and
+// everything but the glyphs is written at its final position.
+public class SvgChantCanvas implements ChantCanvas {
+    private static final String[] PAINT_CLASSES = {"", "", "", " class=\"e\"", " class=\"err\""};
+    private static final float[] STROKE_WIDTHS = {0, 2, 0, 4, 0}; //of each paint (see AndroidChantCanvas)
+    private static final float[] TEXT_SIZES = {60, 0, 0, 0, 40};
+
+    protected final PrintWriter out;
+    protected final StringBuilder element = new StringBuilder(128); //the element being written
+    protected float[] transforms = new float[32]; //scale x, scale y, x, y; for each save()
+    protected int depth; //where the current transformation is in transforms
+
+    public SvgChantCanvas(PrintWriter out) {
+        this.out = out;
+        transforms[0] = 1;
+        transforms[1] = 1;
+    }
+
+    // Starts the picture, which is width by height units, and pointsPerUnit points per unit when
+    // it's printed.
+    public void begin(int width, int height, float pointsPerUnit, String title) {
+        element.setLength(0);
+        element.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        element.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"");
+        element.append(" width=\"");
+        appendNumber(element, width * pointsPerUnit);
+        element.append("pt\" height=\"");
+        appendNumber(element, height * pointsPerUnit);
+        element.append("pt\" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">\n");
+        element.append("<title>");
+        appendEscaped(element, title);
+        element.append("</title>\n<style>line{stroke:#000;stroke-width:2}.e{stroke-width:4}")
+                .append("text{font-family:Helvetica,Arial,sans-serif;font-size:60px}.err{fill:red;font-size:40px}")
+                .append("</style>\n<defs>\n");
+        for (int glyph = 0; glyph < GLYPH_COUNT; glyph++) {
+            element.append("<path id=\"g").append(glyph).append("\" d=\"");
+            NeumeOutlines.outline(glyph, new PathData(element, 1, 1, 0, 0));
+            element.append("\"/>\n");
+        }
+        element.append("</defs>\n");
+        out.print(element);
+    }
+
+    // Ends the picture. Nothing more should be drawn after this.
+    public void end() {
+        out.print("</svg>\n");
+        out.flush();
+    }
+
+    @Override
+    public void save() {
+        if (depth + 8 > transforms.length) {
+            transforms = Arrays.copyOf(transforms, transforms.length * 2);
+        }
+        System.arraycopy(transforms, depth, transforms, depth + 4, 4);
+        depth += 4;
+    }
+
+    @Override
+    public void restore() {
+        depth -= 4;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        transforms[depth + 2] += transforms[depth] * dx;
+        transforms[depth + 3] += transforms[depth + 1] * dy;
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+        transforms[depth] *= sx;
+        transforms[depth + 1] *= sy;
+    }
+
+    private float x(float x) {
+        return transforms[depth + 2] + transforms[depth] * x;
+    }
+
+    private float y(float y) {
+        return transforms[depth + 3] + transforms[depth + 1] * y;
+    }
+
+    private boolean scaled() {
+        return transforms[depth] != 1 || transforms[depth + 1] != 1;
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        element.setLength(0);
+        element.append("<line").append(PAINT_CLASSES[paint]).append(" x1=\"");
+        appendNumber(element, x(startX));
+        element.append("\" y1=\"");
+        appendNumber(element, y(startY));
+        element.append("\" x2=\"");
+        appendNumber(element, x(stopX));
+        element.append("\" y2=\"");
+        appendNumber(element, y(stopY));
+        if (scaled()) {
+            element.append("\" stroke-width=\"");
+            appendNumber(element, STROKE_WIDTHS[paint] * transforms[depth]);
+        }
+        element.append("\"/>\n");
+        out.print(element);
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, int paint) {
+        element.setLength(0);
+        element.append("<circle cx=\"");
+        appendNumber(element, x(cx));
+        element.append("\" cy=\"");
+        appendNumber(element, y(cy));
+        element.append("\" r=\"");
+        appendNumber(element, radius * transforms[depth]);
+        element.append("\"/>\n");
+        out.print(element);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, int paint) {
+        float x1 = x(left);
+        float y1 = y(top);
+        float x2 = x(right);
+        float y2 = y(bottom);
+        element.setLength(0);
+        element.append("<rect x=\"");
+        appendNumber(element, Math.min(x1, x2));
+        element.append("\" y=\"");
+        appendNumber(element, Math.min(y1, y2));
+        element.append("\" width=\"");
+        appendNumber(element, Math.abs(x2 - x1));
+        element.append("\" height=\"");
+        appendNumber(element, Math.abs(y2 - y1));
+        element.append("\"/>\n");
+        out.print(element);
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, int paint) {
+        element.setLength(0);
+        element.append("<text").append(PAINT_CLASSES[paint]).append(" x=\"");
+        appendNumber(element, x(x));
+        element.append("\" y=\"");
+        appendNumber(element, y(y));
+        if (scaled()) {
+            element.append("\" font-size=\"");
+            appendNumber(element, TEXT_SIZES[paint] * transforms[depth + 1]);
+        }
+        element.append("\">");
+        appendEscaped(element, text);
+        element.append("</text>\n");
+        out.print(element);
+    }
+
+    @Override
+    public void drawGlyph(int glyph) {
+        element.setLength(0);
+        element.append("<use xlink:href=\"#g").append(glyph).append('"');
+        if (scaled()) {
+            element.append(" transform=\"matrix(");
+            appendNumber(element, transforms[depth]);
+            element.append(" 0 0 ");
+            appendNumber(element, transforms[depth + 1]);
+            element.append(' ');
+            appendNumber(element, x(0));
+            element.append(' ');
+            appendNumber(element, y(0));
+            element.append(")\"/>\n");
+        } else {
+            element.append(" x=\"");
+            appendNumber(element, x(0));
+            element.append("\" y=\"");
+            appendNumber(element, y(0));
+            element.append("\"/>\n");
+        }
+        out.print(element);
+    }
+
+    @Override
+    public void drawPorrectus(float drop) {
+        element.setLength(0);
+        element.append("<path d=\"");
+        NeumeOutlines.porrectus(drop, new PathData(element, transforms[depth], transforms[depth + 1],
+                transforms[depth + 2], transforms[depth + 3]));
+        element.append("\"/>\n");
+        out.print(element);
+    }
+
+    // the characters that can't be written as they are in XML text and attributes
+    private static void appendEscaped(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                out.append("&lt;");
+            } else if (c == '>') {
+                out.append("&gt;");
+            } else if (c == '&') {
+                out.append("&amp;");
+            } else if (c == '"') {
+                out.append("&quot;");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    // Writes an outline as the data of an SVG path, scaled and then moved by the given amounts.
+    protected static class PathData extends NeumeOutlines.CurveOutline {
+        private final StringBuilder out;
+        private final float sx;
+        private final float sy;
+        private final float dx;
+        private final float dy;
+
+        protected PathData(StringBuilder out, float sx, float sy, float dx, float dy) {
+            this.out = out;
+            this.sx = sx;
+            this.sy = sy;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        @Override
+        public void moveTo(float x, float y) {
+            out.append('M');
+            point(x, y);
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            out.append('L');
+            point(x, y);
+        }
+
+        @Override
+        protected void curveTo(float x1, float y1, float x2, float y2, float x, float y) {
+            out.append('C');
+            point(x1, y1);
+            out.append(' ');
+            point(x2, y2);
+            out.append(' ');
+            point(x, y);
+        }
+
+        @Override
+        public void close() {
+            out.append('Z');
+        }
+
+        private void point(float x, float y) {
+            appendNumber(out, dx + sx * x);
+            out.append(' ');
+            appendNumber(out, dy + sy * y);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Exports the chants in the app's chants.xml, and checks that what is written is well formed: that
+// each SVG is XML, and that the booklet's cross-reference table points at each of its objects.
+public class ChantExporterTest {
+    private static final File CHANTS_FILE = new File("../app/src/main/chants/chants.xml");
+
+    @Test
+    public void exportsEveryChant() throws Exception {
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        ChantCompiler.compile(CHANTS_FILE, names, chants, new ArrayList<String>());
+        File dir = File.createTempFile("export", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        try {
+            checkExport(names, chants, dir);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private void checkExport(List<String> names, List<Chant> chants, File dir) throws Exception {
+        File booklet = new File(dir, "booklet.pdf");
+        new ChantExporter(ChantExporter.DEFAULT_WIDTH, ChantExporter.Page.A5).export(names, chants, dir, booklet);
+
+        for (String name : names) {
+            File svg = new File(dir, name + ".svg");
+            assertTrue(svg.getName(), svg.isFile());
+            DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(svg); //throws if it isn't XML
+        }
+
+        String pdf = read(booklet);
+        assertTrue(pdf.startsWith("%PDF-1.4"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+        Matcher startxref = Pattern.compile("startxref\n(\\d+)").matcher(pdf);
+        assertTrue(startxref.find());
+        Matcher entries = Pattern.compile("(\\d{10}) 00000 n").matcher(pdf.substring(Integer.parseInt(startxref.group(1))));
+        int object = 1;
+        while (entries.find()) {
+            int offset = Integer.parseInt(entries.group(1));
+            assertTrue("object " + object, pdf.startsWith(object + " 0 obj\n", offset));
+            object++;
+        }
+        assertTrue(pdf.contains("/Count "));
+    }
+
+    @Test
+    public void reportsAChantThatCantBeDrawn() throws Exception {
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        ChantCompiler.compile(CHANTS_FILE, names, chants, new ArrayList<String>());
+        final Chant broken = chants.get(1);
+        ChantExporter exporter = new ChantExporter(ChantExporter.DEFAULT_WIDTH, ChantExporter.Page.A5) {
+            @Override
+            public ChantLayout layout(Chant chant) {
+                if (chant == broken) {
+                    throw new IllegalStateException("broken");
+                }
+                return super.layout(chant);
+            }
+        };
+        File booklet = File.createTempFile("booklet", ".pdf");
+        try {
+            exporter.export(names, chants, null, booklet);
+            fail("the broken chant wasn't reported");
+        } catch (IOException e) {
+            //the chant's failure, with its cause, rather than the booklet's that waited for it
+            assertTrue(e.getMessage(), e.getCause() instanceof IllegalStateException);
+        } finally {
+            booklet.delete();
+        }
+    }
+
+    @Test
+    public void helveticaWidths() {
+        assertEquals(556 * 60 / 1000f, ChantExporter.textWidth("a", 60), 0.001f);
+        assertEquals(ChantExporter.textWidth("Domine", 60), ChantExporter.textWidth("D\u00f3mine", 60), 0.001f);
+        assertEquals(ChantExporter.textWidth("e", 60), ChantExporter.textWidth("\u00e9", 60), 0.001f);
+    }
+
+    @Test
+    public void numbersHaveAtMostTwoDecimals() {
+        StringBuilder out = new StringBuilder();
+        for (float value : new float[]{0, 12, -3.5f, 0.333f, -0.25f, 1.999f}) {
+            ChantExporter.appendNumber(out, value);
+            out.append(' ');
+        }
+        assertEquals("0 12 -3.5 0.33 -0.25 2 ", out.toString());
+    }
+
+    private static String read(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return new String(bytes, Charset.forName("ISO-8859-1"));
+        } finally {
+            in.close();
+        }
+    }
+}
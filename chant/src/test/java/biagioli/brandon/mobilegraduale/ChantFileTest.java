@@ -0,0 +1,131 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Compiles the chants in the app's chants.xml the way ChantCompiler does, and reads them back out
+// of chants.bin one at a time, as the app does.
+public class ChantFileTest {
+    private static final File CHANTS_FILE = new File("../app/src/main/chants/chants.xml");
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> parts = new ArrayList<>();
+    private final List<Chant> chants = new ArrayList<>();
+    private byte[] compiled;
+
+    @Before
+    public void setUp() throws Exception {
+        ChantCompiler.compile(CHANTS_FILE, names, parts, chants, new ArrayList<String>());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChantFile.write(out, names, parts, chants);
+        compiled = out.toByteArray();
+    }
+
+    @Test
+    public void readsEachChantBackByItsID() throws Exception {
+        ChantFile file = ChantFile.open(ByteBuffer.wrap(compiled));
+        assertEquals(chants.size(), file.chantCount());
+        for (int id = 0; id < chants.size(); id++) {
+            assertEquals(names.get(id), file.name(id));
+            assertEquals(parts.get(id), file.part(id));
+            assertEquals(chants.get(id).mode, file.mode(id));
+            assertSameChant(chants.get(id), file.read(id));
+        }
+        assertFalse(file.contains(-1));
+        assertFalse(file.contains(chants.size()));
+    }
+
+    @Test
+    public void findsChantsByName() throws Exception {
+        ChantFile file = ChantFile.open(ByteBuffer.wrap(compiled));
+        for (int id = 0; id < names.size(); id++) {
+            assertEquals(id, file.find(names.get(id)));
+        }
+        assertEquals(-1, file.find("Introit_Nonexistent"));
+        assertEquals(-1, file.find(""));
+        assertEquals(-1, ChantFile.empty().find("Introit_Ad_te_levavi"));
+    }
+
+    @Test
+    public void keepsMoreThan127Clefs() throws Exception {
+        StringBuilder notation = new StringBuilder();
+        for (int s = 0; s < 200; s++) {
+            notation.append("CLEF(do,").append(1 + s % 4).append(") A(do) ");
+        }
+        Chant chant = new ChantParser().parse(notation.toString());
+        assertEquals(200, chant.sectionCount);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChantFile.write(out, Arrays.asList("Many_clefs"), Arrays.asList("other"), Arrays.asList(chant));
+        assertSameChant(chant, ChantFile.open(ByteBuffer.wrap(out.toByteArray())).read(0));
+    }
+
+    @Test
+    public void readsFromAMappedFile() throws Exception {
+        File bin = File.createTempFile("chants", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(bin);
+            try {
+                //something in front of it, as in an APK
+                out.write(new byte[100]);
+                out.write(compiled);
+            } finally {
+                out.close();
+            }
+            RandomAccessFile in = new RandomAccessFile(bin, "r");
+            ChantFile file;
+            try {
+                file = ChantFile.open(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 100, compiled.length));
+            } finally {
+                in.close();
+            }
+            int last = chants.size() - 1;
+            assertSameChant(chants.get(last), file.read(last));
+            assertEquals(ChantFile.open(ByteBuffer.wrap(compiled)).contentHash(last), file.contentHash(last));
+        } finally {
+            bin.delete();
+        }
+    }
+
+    @Test
+    public void hashesTellChantsApart() throws Exception {
+        ChantFile file = ChantFile.open(ByteBuffer.wrap(compiled));
+        for (int a = 0; a < chants.size(); a++) {
+            for (int b = a + 1; b < chants.size(); b++) {
+                assertNotEquals(file.contentHash(a), file.contentHash(b));
+            }
+        }
+    }
+
+    private static void assertSameChant(Chant expected, Chant actual) {
+        assertEquals(expected.sectionCount, actual.sectionCount);
+        assertArrayEquals(Arrays.copyOf(expected.sectionStart, expected.sectionCount + 1),
+                Arrays.copyOf(actual.sectionStart, actual.sectionCount + 1));
+        assertEquals(expected.syllableCount, actual.syllableCount);
+        for (int i = 0; i < expected.syllableCount; i++) {
+            assertEquals(expected.syllableText[i], actual.syllableText[i]);
+            assertEquals(expected.syllableNoteStart[i], actual.syllableNoteStart[i]);
+        }
+        assertEquals(expected.noteCount, actual.noteCount);
+        for (int n = 0; n < expected.noteCount; n++) {
+            assertEquals(expected.noteValue[n], actual.noteValue[n], 0);
+            assertEquals(expected.noteFlags[n], actual.noteFlags[n]);
+            assertEquals(expected.noteOffset[n], actual.noteOffset[n]);
+            assertEquals(expected.noteEpisemaHeight[n], actual.noteEpisemaHeight[n]);
+        }
+    }
+}
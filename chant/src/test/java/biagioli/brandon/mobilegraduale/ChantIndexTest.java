@@ -0,0 +1,95 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Searches an index of the chants in the app's chants.xml, made the way ChantCompiler makes it.
+public class ChantIndexTest {
+    private static final File CHANTS_FILE = new File("../app/src/main/chants/chants.xml");
+
+    private ChantIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        ChantCompiler.compile(CHANTS_FILE, names, chants, new ArrayList<String>());
+        index = ChantIndex.build(names, chants);
+    }
+
+    // the names of the chants found by a search, in order
+    private List<String> search(ChantIndex index, String query) {
+        List<String> names = new ArrayList<>();
+        for (int chant : index.search(query)) {
+            names.add(index.name(chant));
+        }
+        return names;
+    }
+
+    @Test
+    public void wordsAreNormalized() {
+        assertEquals("domine", ChantIndex.normalize("D\u00f3-mi-ne,"));
+        assertEquals("caelum", ChantIndex.normalize("C\u01fd-lum"));
+        assertEquals("", ChantIndex.normalize(" * "));
+    }
+
+    @Test
+    public void findsChantsByIncipit() {
+        assertEquals(Arrays.asList("Introit_Ad_te_levavi"), search(index, "Ad te lev\u00e1vi"));
+        assertEquals(Arrays.asList("Introit_Gaudete_in_Domino"), search(index, "gaud"));
+        assertEquals(Arrays.asList("Introit_Populus_Sion"), search(index, "POPULUS sion"));
+    }
+
+    @Test
+    public void findsPhrasesAnywhereWithIncipitsFirst() {
+        //the gradual starts with these words, and the introit has them in the middle
+        List<String> found = search(index, "universi qui te");
+        assertEquals("Gradual_Universi_qui_te_exspectant", found.get(0));
+        assertTrue(found.contains("Introit_Ad_te_levavi"));
+    }
+
+    @Test
+    public void findsWordsThatRunAcrossABar() {
+        //"ve-" and "ni-et." are on either side of a bar, as are "re-" and "gis"
+        assertTrue(search(index, "veniet").contains("Gradual_Ex_Sion"));
+        assertTrue(search(index, "qui regis israel").contains("Gradual_Qui_sedes_Domine"));
+        assertFalse(search(index, "niet").contains("Gradual_Ex_Sion")); //not a word of its own
+    }
+
+    @Test
+    public void lastWordIsOnlyAPrefixWhileTyping() {
+        assertFalse(search(index, "ad te lev").isEmpty());
+        assertTrue(search(index, "ad te lev ").isEmpty());
+        assertTrue(search(index, "levavi ad").isEmpty()); //the words have to be in order
+    }
+
+    @Test
+    public void emptyQueryListsEverything() {
+        assertEquals(index.chantCount(), index.search("  ").length);
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        ChantIndex read = ChantIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        for (String query : new String[]{"", "do", "universi qui te", "alleluia"}) {
+            assertEquals(search(index, query), search(read, query));
+        }
+        for (int c = 0; c < index.chantCount(); c++) {
+            assertEquals(index.incipit(c), read.incipit(c));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Draws every chant in the app's chants.xml onto a canvas that just counts what is drawn, and
+// checks that once everything has been drawn once, drawing it again doesn't allocate anything.
+// Drawing happens every frame while a chant is scrolled, so any allocation there eventually means
+// a garbage collection in the middle of scrolling. It also draws them from several threads at once,
+// with the same renderers, and checks that each thread draws exactly what one thread alone would.
+public class ChantRendererAllocationTest {
+    private static final File CHANTS_FILE = new File("../app/src/main/chants/chants.xml");
+    private static final int[] WIDTHS = {720, 1080, 1440}; //some common screen widths
+    private static final int WARM_UP_FRAMES = 50;
+    private static final int FRAMES = 20;
+
+    // A ChantCanvas that counts the drawing operations, and checks that saves and restores match.
+    // It also keeps a checksum of where everything is drawn, to compare one drawing with another.
+    private static class RecordingCanvas implements ChantCanvas {
+        int saveDepth;
+        int operations;
+        int glyphs;
+        long checksum;
+
+        @Override
+        public void save() {
+            saveDepth++;
+        }
+
+        @Override
+        public void restore() {
+            assertTrue("restore() without save()", saveDepth > 0);
+            saveDepth--;
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+            checksum = checksum * 31 + Float.floatToIntBits(dx) * 17 + Float.floatToIntBits(dy);
+        }
+
+        @Override
+        public void scale(float sx, float sy) {
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+            operations++;
+            checksum = checksum * 31 + Float.floatToIntBits(startY) * 17 + Float.floatToIntBits(stopY);
+        }
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, int paint) {
+            operations++;
+        }
+
+        @Override
+        public void drawRect(float left, float top, float right, float bottom, int paint) {
+            operations++;
+        }
+
+        @Override
+        public void drawText(String text, float x, float y, int paint) {
+            operations++;
+        }
+
+        @Override
+        public void drawGlyph(int glyph) {
+            operations++;
+            glyphs++;
+        }
+
+        @Override
+        public void drawPorrectus(float drop) {
+            operations++;
+            glyphs++;
+        }
+    }
+
+    private final List<ChantRenderer> renderers = new ArrayList<>();
+    private final List<ChantLayout> layouts = new ArrayList<>();
+    private final RecordingCanvas canvas = new RecordingCanvas();
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        ChantCompiler.compile(CHANTS_FILE, names, chants, errors);
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertFalse(chants.isEmpty());
+
+        for (Chant chant : chants) {
+            //the text is measured by the app; any width will do here
+            int[] textWidths = new int[chant.syllableCount];
+            for (int i = 0; i < chant.syllableCount; i++) {
+                textWidths[i] = chant.syllableText[i].length() * 30;
+            }
+            for (int width : WIDTHS) {
+                renderers.add(new ChantRenderer(chant));
+                layouts.add(new ChantLayout(chant, textWidths, width));
+            }
+        }
+    }
+
+    // draws every line of every chant, the way GregorianChantView draws a frame
+    private void drawFrame() {
+        drawFrame(canvas);
+    }
+
+    private void drawFrame(RecordingCanvas canvas) {
+        for (int c = 0; c < renderers.size(); c++) {
+            ChantRenderer renderer = renderers.get(c);
+            ChantLayout layout = layouts.get(c);
+            renderer.drawErrors(canvas);
+            for (int l = 0; l < layout.lines.size(); l++) {
+                renderer.drawStaffLine(canvas, layout, layout.lines.get(l));
+            }
+        }
+    }
+
+    @Test
+    public void drawingDrawsEverything() {
+        drawFrame();
+        assertEquals(0, canvas.saveDepth);
+        assertTrue(canvas.glyphs > 0);
+        assertTrue(canvas.operations > canvas.glyphs);
+    }
+
+    @Test
+    public void drawingDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            drawFrame();
+        }
+        //measuring might allocate a little itself, so measure that first
+        long start = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++) {
+            drawFrame();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - start - overhead;
+        assertEquals("bytes allocated while drawing " + FRAMES + " frames", 0, allocated);
+    }
+
+    @Test
+    public void drawingFromManyThreadsAtOnceDrawsTheSame() throws Exception {
+        final RecordingCanvas alone = new RecordingCanvas();
+        drawFrame(alone);
+
+        final RecordingCanvas[] canvases = new RecordingCanvas[4];
+        Thread[] threads = new Thread[canvases.length];
+        for (int t = 0; t < threads.length; t++) {
+            canvases[t] = new RecordingCanvas();
+            final RecordingCanvas canvas = canvases[t];
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < FRAMES; i++) {
+                        RecordingCanvas frame = new RecordingCanvas();
+                        drawFrame(frame);
+                        if (frame.checksum != alone.checksum || frame.operations != alone.operations) {
+                            return; //leaves canvas empty, which fails below
+                        }
+                    }
+                    drawFrame(canvas);
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (RecordingCanvas canvas : canvases) {
+            assertEquals(alone.operations, canvas.operations);
+            assertEquals(alone.checksum, canvas.checksum);
+        }
+    }
+}
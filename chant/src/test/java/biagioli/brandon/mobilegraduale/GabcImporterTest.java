@@ -0,0 +1,154 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import biagioli.brandon.mobilegraduale.Chant.NoteFlag;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Converts a few chants from GABC, and checks what they become in the project's notation, and that
+// a directory of them is written to imported.xml and chants.bin as the same chants.
+public class GabcImporterTest {
+    private static final String AD_TE_LEVAVI = "name: Ad te lev\u00e1vi;\noffice-part: Introitus;\nmode: 8;\n%%\n"
+            + "(c4) AD(g~) te(h) le(gh)v\u00e1(h)vi(hvGF'g.) *(,) \u00e1(ghg)ni(h)mam(hgh) me(h_i_)am(hg) (;)\n"
+            + "De(h)us(iwj) me(ixi)us,(hiyh) % a comment\nin(fgh/hg) te(a) (::)\n";
+
+    @Test
+    public void convertsNeumesToFlags() throws Exception {
+        GabcImporter importer = new GabcImporter();
+        String notation = importer.convert(new StringReader(AD_TE_LEVAVI));
+        assertEquals(new ArrayList<String>(), importer.errors());
+        assertEquals("MODE(eight) CLEF(do,4) AD(liq,sol-) te(la-) le-(sol-,la-) v\u00e1-(la-)"
+                + " vi(la-,sol-,v_epi,fa-,dot,sol-) * BAR(quarter) \u00e1-(torc,sol-,la-,sol-) ni-(la-)"
+                + " mam(por,la-,sol-,la-) me-(h_epi,la-,h_epi,ti-) am(cliv,la-,sol-) BAR(half) De-(la-)"
+                + " us(quil,ti-,do) me-(te-) us,(neut,la-,la-) in(scand,fa-,sol-,la-,cliv,la-,sol-)"
+                + " te(la--) BAR(double)", notation);
+        assertEquals("introit", importer.part());
+        assertEquals("Introit_Ad_te_levavi", importer.chantName(new File("ad-te.gabc")));
+
+        Chant chant = new ChantParser().parse(notation);
+        assertTrue(chant.errorMessages.isEmpty());
+        assertEquals(Chant.Mode.EIGHT, chant.mode);
+        assertTrue(Chant.has(chant.noteFlags[firstNote(chant, "\u00e1-")], NoteFlag.TORCULUS));
+        assertTrue(Chant.has(chant.noteFlags[firstNote(chant, "mam")], NoteFlag.PORRECTUS));
+        assertTrue(Chant.has(chant.noteFlags[firstNote(chant, "am")], NoteFlag.CLIVIS));
+        assertTrue(Chant.has(chant.noteFlags[firstNote(chant, "us")], NoteFlag.QUILISMA));
+        assertTrue(Chant.has(chant.noteFlags[firstNote(chant, "in")], NoteFlag.SCANDICUS));
+        assertTrue((chant.syllableBits[syllable(chant, "me-")] & Chant.HAS_FLAT) != 0);
+        //the a below the staff, two octaves below do
+        assertEquals(-0.5f, chant.noteValue[firstNote(chant, "te")], 0);
+    }
+
+    @Test
+    public void readsFaClefs() throws Exception {
+        GabcImporter importer = new GabcImporter();
+        String notation = importer.convert(new StringReader("name: Alleluia;\noffice-part: Alleluia;\n%%\n"
+                + "(f3) Al(ef)le(fe)lu(e)<sp>V/</sp> ia.(e) (c4) O(j)"));
+        assertEquals("CLEF(fa,3) Al-(do,re) le-(cliv,re,do) lu-(do) \u2123 ia.(do) CLEF(do,4) O(do)", notation);
+        assertEquals("Alleluia_Alleluia", importer.chantName(new File("alleluia.gabc")));
+    }
+
+    @Test
+    public void readsClefsWithAFlat() throws Exception {
+        //every ti in the section of a cb3 clef is flat, until a natural, for the rest of its word
+        GabcImporter importer = new GabcImporter();
+        String notation = importer.convert(new StringReader("name: Kyrie;\n%%\n"
+                + "(cb3) Ky(g)ri(gf)e(gyg) e(g) (c4) lei(i)son.(i)"));
+        assertEquals(new ArrayList<String>(), importer.errors());
+        assertEquals("CLEF(do,3) Ky-(te-) ri-(cliv,te-,la-) e(neut,ti-) e(te-) CLEF(do,4) lei-(ti-)"
+                + " son.(ti-)", notation);
+        Chant chant = new ChantParser().parse(notation);
+        assertTrue(chant.errorMessages.isEmpty());
+        assertTrue((chant.syllableBits[syllable(chant, "Ky-")] & Chant.HAS_FLAT) != 0);
+    }
+
+    @Test
+    public void importsADirectory() throws Exception {
+        File dir = File.createTempFile("gabc", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        List<File> files = new ArrayList<>();
+        files.add(write(dir, "ad-te.gabc", AD_TE_LEVAVI));
+        files.add(write(dir, "no-clef.gabc", "name: No clef;\n%%\nAd(g) te(h)\n"));
+        files.add(write(dir, "again.gabc", AD_TE_LEVAVI));
+        try {
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int count = GabcImporter.importFiles(files, dir, new PrintStream(new ByteArrayOutputStream()),
+                    new PrintStream(errors));
+            assertEquals(2, count);
+            assertTrue(errors.toString().contains("no-clef.gabc"));
+
+            List<String> names = new ArrayList<>();
+            List<String> parts = new ArrayList<>();
+            List<Chant> chants = new ArrayList<>();
+            List<String> compileErrors = new ArrayList<>();
+            ChantCompiler.compile(new File(dir, GabcImporter.OUTPUT_NAME), names, parts, chants, compileErrors);
+            assertEquals(new ArrayList<String>(), compileErrors);
+            assertEquals(Arrays.asList("Introit_Ad_te_levavi", "Introit_Ad_te_levavi_2"), names);
+
+            ChantFile file = ChantFile.open(ByteBuffer.wrap(read(new File(dir, ChantFile.ASSET_NAME))));
+            assertEquals(2, file.chantCount());
+            for (int id = 0; id < chants.size(); id++) {
+                assertEquals(id, file.find(names.get(id)));
+                assertEquals(parts.get(id), file.part(id));
+                Chant chant = file.read(id);
+                assertEquals(chants.get(id).syllableCount, chant.syllableCount);
+                assertArrayEquals(chants.get(id).noteFlags, Arrays.copyOf(chant.noteFlags, chants.get(id).noteFlags.length));
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    // the last syllable with the given text
+    private static int syllable(Chant chant, String text) {
+        for (int i = chant.syllableCount - 1; i >= 0; i--) {
+            if (chant.syllableText[i].equals(text)) {
+                return i;
+            }
+        }
+        throw new AssertionError("no syllable " + text);
+    }
+
+    private static int firstNote(Chant chant, String text) {
+        return chant.syllableNoteStart[syllable(chant, text)];
+    }
+
+    private static File write(File dir, String name, String gabc) throws Exception {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(gabc.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
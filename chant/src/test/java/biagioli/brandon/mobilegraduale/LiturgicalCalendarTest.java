@@ -0,0 +1,106 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Test;
+
+import biagioli.brandon.mobilegraduale.LiturgicalCalendar.Celebration;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Checks LiturgicalCalendar against the dates of the movable feasts in a few years, as printed in
+// the Ordo, and the places where the calendar's rules meet: the end of Advent, the Sundays after
+// Christmas and Epiphany, and the last Sundays after Pentecost.
+public class LiturgicalCalendarTest {
+
+    private static void assertCelebration(Celebration expected, int year, int month, int day) {
+        assertEquals(year + "-" + month + "-" + day, expected, LiturgicalCalendar.celebrationOn(year, month, day));
+    }
+
+    @Test
+    public void easterFallsOnTheRightDate() {
+        int[][] easters = {{2008, 3, 23}, {2011, 4, 24}, {2016, 3, 27}, {2017, 4, 16}, {2019, 4, 21},
+                {2038, 4, 25}, {2285, 3, 22}};
+        for (int[] easter : easters) {
+            assertEquals(LiturgicalCalendar.dayNumber(easter[0], easter[1], easter[2]),
+                    LiturgicalCalendar.easter(easter[0]));
+        }
+    }
+
+    @Test
+    public void dayNumbersCountFromTheEpoch() {
+        assertEquals(0, LiturgicalCalendar.dayNumber(1970, 1, 1));
+        assertEquals(59, LiturgicalCalendar.dayNumber(1970, 3, 1));
+        assertEquals(11016, LiturgicalCalendar.dayNumber(2000, 2, 29));
+        assertEquals(-1, LiturgicalCalendar.dayNumber(1969, 12, 31));
+    }
+
+    @Test
+    public void adventAndChristmas() {
+        assertCelebration(Celebration.PENTECOST_24, 2016, 11, 26);
+        assertCelebration(Celebration.ADVENT_1, 2016, 11, 27);
+        assertCelebration(Celebration.ADVENT_1, 2016, 12, 3);
+        assertCelebration(Celebration.ADVENT_2, 2016, 12, 4);
+        assertCelebration(Celebration.ADVENT_3, 2016, 12, 13);
+        assertCelebration(Celebration.ADVENT_4, 2016, 12, 24);
+        assertCelebration(Celebration.CHRISTMAS, 2016, 12, 25);
+        assertCelebration(Celebration.CHRISTMAS, 2016, 12, 31); //no Sunday within the octave
+        assertCelebration(Celebration.ADVENT_1, 2017, 12, 3);
+        assertCelebration(Celebration.CHRISTMAS, 2017, 12, 30);
+        assertCelebration(Celebration.SUNDAY_IN_CHRISTMAS_OCTAVE, 2017, 12, 31);
+    }
+
+    @Test
+    public void januaryAndEpiphany() {
+        assertCelebration(Celebration.CHRISTMAS_OCTAVE, 2017, 1, 1);
+        assertCelebration(Celebration.HOLY_NAME, 2017, 1, 2); //no Sunday from the 2nd to the 5th
+        assertCelebration(Celebration.CHRISTMAS_OCTAVE, 2020, 1, 4);
+        assertCelebration(Celebration.HOLY_NAME, 2020, 1, 5);
+        assertCelebration(Celebration.EPIPHANY, 2017, 1, 6);
+        assertCelebration(Celebration.EPIPHANY, 2017, 1, 7);
+        assertCelebration(Celebration.HOLY_FAMILY, 2017, 1, 8);
+        assertCelebration(Celebration.EPIPHANY_5, 2017, 2, 11);
+        assertCelebration(Celebration.SEPTUAGESIMA, 2017, 2, 12);
+    }
+
+    @Test
+    public void lentAndEaster() {
+        assertCelebration(Celebration.QUINQUAGESIMA, 2017, 2, 28);
+        assertCelebration(Celebration.ASH_WEDNESDAY, 2017, 3, 1);
+        assertCelebration(Celebration.ASH_WEDNESDAY, 2017, 3, 4);
+        assertCelebration(Celebration.LENT_1, 2017, 3, 5);
+        assertCelebration(Celebration.PASSION_SUNDAY, 2017, 4, 2);
+        assertCelebration(Celebration.PALM_SUNDAY, 2017, 4, 15);
+        assertCelebration(Celebration.EASTER, 2017, 4, 16);
+        assertCelebration(Celebration.LOW_SUNDAY, 2017, 4, 23);
+        assertCelebration(Celebration.ASCENSION, 2017, 5, 25);
+        assertCelebration(Celebration.SUNDAY_AFTER_ASCENSION, 2017, 5, 28);
+        assertCelebration(Celebration.PENTECOST, 2017, 6, 4);
+        assertCelebration(Celebration.TRINITY, 2017, 6, 11);
+        assertCelebration(Celebration.PENTECOST_2, 2017, 6, 18);
+    }
+
+    @Test
+    public void lastSundaysAfterPentecost() {
+        //2017 has 25 Sundays after Pentecost, so the 24th is the resumed Sixth Sunday after Epiphany
+        assertCelebration(Celebration.PENTECOST_23, 2017, 11, 12);
+        assertCelebration(Celebration.EPIPHANY_6, 2017, 11, 19);
+        assertCelebration(Celebration.PENTECOST_24, 2017, 11, 26);
+        //2038 (Easter on 25 April) has only 23, and the last is always the 24th
+        assertCelebration(Celebration.PENTECOST_22, 2038, 11, 14);
+        assertCelebration(Celebration.PENTECOST_24, 2038, 11, 21);
+        assertCelebration(Celebration.ADVENT_1, 2038, 11, 28);
+    }
+
+    @Test
+    public void everyDayHasACelebration() {
+        for (int year = 1900; year <= 2100; year++) {
+            //(dayNumber carries days past the end of January on into the following months)
+            int days = LiturgicalCalendar.dayNumber(year + 1, 1, 1) - LiturgicalCalendar.dayNumber(year, 1, 1);
+            for (int day = 1; day <= days; day++) {
+                assertNotNull(LiturgicalCalendar.celebrationOn(year, 1, day));
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package biagioli.brandon.mobilegraduale;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import biagioli.brandon.mobilegraduale.Chant.Mode;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created by Brandon on 3/16/2017.
+ */
+// Searches the melodies of a few small chants, where which ones have a figure is easy to see, and
+// checks the index of the chants in the app's chants.xml against a plain search of their notes.
+public class MelodyIndexTest {
+    private static final File CHANTS_FILE = new File("../app/src/main/chants/chants.xml");
+
+    // do re mi do, at different pitches, across a bar, and across a clef (where it doesn't count)
+    private static final String[][] CHANTS = {
+            {"Do_re_mi", "MODE(eight) CLEF(do,4) A(do,re) men.(mi,do) BAR(double)"},
+            {"Sol_la_ti", "MODE(one) CLEF(fa,3) A-(fa,sol,la) men.(ti,sol,fa) BAR(double)"},
+            {"Across_a_bar", "MODE(eight) CLEF(do,3) A-(la-,do,re) BAR(quarter) men.(mi,do) BAR(double)"},
+            {"Across_a_clef", "MODE(eight) CLEF(do,4) A-(do,re,mi) CLEF(fa,3) men.(do) BAR(double)"},
+            {"No_mode", "CLEF(do,4) A-(re-,mi-,fa-) men.(re-) BAR(double)"},
+    };
+
+    private static MelodyIndex buildSmall() {
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        for (String[] chant : CHANTS) {
+            names.add(chant[0]);
+            chants.add(new ChantParser().parse(chant[1]));
+        }
+        return MelodyIndex.build(names, chants);
+    }
+
+    // the names of the chants found by a search, in order
+    private static List<String> search(MelodyIndex index, Mode mode, int... figure) {
+        List<String> names = new ArrayList<>();
+        for (int chant : index.search(figure, mode)) {
+            names.add(index.name(chant));
+        }
+        return names;
+    }
+
+    @Test
+    public void findsAFigureAtAnyPitch() {
+        MelodyIndex index = buildSmall();
+        assertEquals(Arrays.asList("Do_re_mi", "Sol_la_ti", "Across_a_bar", "No_mode"),
+                search(index, null, 1, 1, -2));
+        assertEquals(Arrays.asList("Sol_la_ti"), search(index, null, 1, 1, 1));
+        assertEquals(Arrays.asList("Sol_la_ti"), search(index, null, 1, 1, 1, -2, -1));
+        assertEquals(search(index, null, 1, 1, -2),
+                search(index, null, MelodyIndex.intervalsOf(new float[]{1.5f, 2, 2.5f, 1.5f})));
+    }
+
+    @Test
+    public void findsShortFiguresToo() {
+        MelodyIndex index = buildSmall();
+        //(-1 is only at the very end of Sol_la_ti, after which a gram has no more intervals)
+        assertEquals(Arrays.asList("Sol_la_ti"), search(index, null, -1));
+        assertEquals(Arrays.asList("Sol_la_ti"), search(index, null, -2, -1));
+        assertEquals(Arrays.asList("Across_a_bar"), search(index, null, 2, 1));
+        assertTrue(search(index, null, 5).isEmpty());
+    }
+
+    @Test
+    public void aClefBreaksTheMelody() {
+        MelodyIndex index = buildSmall();
+        assertFalse(search(index, null, 1, 1, -2).contains("Across_a_clef"));
+        assertTrue(search(index, null, 1, 1).contains("Across_a_clef"));
+    }
+
+    @Test
+    public void filtersByMode() {
+        MelodyIndex index = buildSmall();
+        assertEquals(Arrays.asList("Do_re_mi", "Across_a_bar"), search(index, Mode.EIGHT, 1, 1, -2));
+        assertEquals(Arrays.asList("Sol_la_ti"), search(index, Mode.ONE, 1, 1, -2));
+        assertTrue(search(index, Mode.TWO, 1, 1, -2).isEmpty());
+    }
+
+    @Test
+    public void agreesWithAPlainSearchOfTheApp() throws Exception {
+        List<String> names = new ArrayList<>();
+        List<Chant> chants = new ArrayList<>();
+        ChantCompiler.compile(CHANTS_FILE, names, chants, new ArrayList<String>());
+        MelodyIndex index = MelodyIndex.build(names, chants);
+
+        int[][] figures = {{1}, {-1, -1}, {0, 0}, {1, 1, -2}, {2, -1, -1, 0}, {-2, 1, 1, -1, -1, 1}, {4}, {-3, 3}};
+        for (int[] figure : figures) {
+            List<String> expected = new ArrayList<>();
+            for (int c = 0; c < chants.size(); c++) {
+                if (plainSearch(chants.get(c), figure)) {
+                    expected.add(names.get(c));
+                }
+            }
+            assertEquals(Arrays.toString(figure), expected, search(index, null, figure));
+        }
+    }
+
+    // whether a chant has a figure, found by walking through each of its clefs' notes
+    private static boolean plainSearch(Chant chant, int[] figure) {
+        for (int s = 0; s < chant.sectionCount; s++) {
+            List<Float> values = new ArrayList<>();
+            int end = chant.syllableNoteStart[chant.sectionStart[s + 1]];
+            for (int n = chant.syllableNoteStart[chant.sectionStart[s]]; n < end; n++) {
+                if ((chant.noteFlags[n] & Chant.BAR_FLAGS) == 0) {
+                    values.add(chant.noteValue[n]);
+                }
+            }
+            for (int start = 0; start + figure.length < values.size(); start++) {
+                boolean matches = true;
+                for (int k = 0; k < figure.length && matches; k++) {
+                    matches = Math.round((values.get(start + k + 1) - values.get(start + k)) * 2) == figure[k];
+                }
+                if (matches) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws Exception {
+        MelodyIndex index = buildSmall();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+        MelodyIndex read = MelodyIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(index.chantCount(), read.chantCount());
+        for (int c = 0; c < index.chantCount(); c++) {
+            assertEquals(index.mode(c), read.mode(c));
+        }
+        assertEquals(search(index, Mode.EIGHT, 1, 1, -2), search(read, Mode.EIGHT, 1, 1, -2));
+        assertEquals(search(index, null, 1), search(read, null, 1));
+    }
+}